@@ -0,0 +1,46 @@
+package Benchmarks;
+
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import Animation.Animation;
+import Managers.TextureAtlas;
+
+/**
+ * AnimationBenchmark.java <hr>
+ * Measures a single {@link Animation#update()} tick of a looping animation with as many frames as
+ * the player's walk cycle.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@State(Scope.Benchmark)
+public class AnimationBenchmark {
+
+    private static final int FRAME_COUNT = 8;
+    private static final double FRAME_DURATION = 60;
+
+    private Animation animation;
+
+    @Setup
+    public void setup() {
+        BenchmarkContext.silenceLogs();
+        animation = new Animation("benchmark", true);
+        TextureAtlas atlas = new TextureAtlas("benchmark");
+        for (int i = 0; i < FRAME_COUNT; i++) {
+            BufferedImage image = new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB);
+            animation.addFrame(atlas.add(image), FRAME_DURATION);
+        }
+        animation.start();
+    }
+
+    @Benchmark
+    public int update() {
+        animation.update();
+        return animation.getCurrFrameIndex();
+    }
+}
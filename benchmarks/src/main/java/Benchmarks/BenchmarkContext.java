@@ -0,0 +1,66 @@
+package Benchmarks;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+
+import Entity.Player;
+import Game.GameContext;
+import Game.GamePanel;
+import Managers.ImageManager;
+import Tile.TMXReader;
+import Tile.TileMap;
+
+/**
+ * BenchmarkContext.java <hr>
+ * Headless {@link GameContext} shared by the benchmarks, with helpers to load a map the same way
+ * the game does. Level and game endings are ignored.
+ * <p>
+ * Benchmarks must be run from the repository root, as assets are resolved against
+ * {@code user.dir}.
+ */
+public class BenchmarkContext implements GameContext {
+
+    /** Names of the four maps shipped with the game */
+    public static final String[] MAP_NAMES = {
+        "ForestFrenzy", "WinterWasteland", "GraveyardShift", "MysteryCastle"
+    };
+
+    @Override
+    public int getWidth() { return GamePanel.SCREEN_WIDTH; }
+
+    @Override
+    public int getHeight() { return GamePanel.SCREEN_HEIGHT; }
+
+    @Override
+    public void endGame() {}
+
+    @Override
+    public void endLevel() {}
+
+
+    /* Methods */
+
+    /**
+     * Discards everything written to standard output, so the game's log messages do not end up
+     * in the measurements. JMH reports results over its own channel, not standard output.
+     */
+    public static void silenceLogs() {
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+    }
+
+    /**
+     * Loads the default images and then the specified map with a player spawned into it.
+     *
+     * @param mapName name of the map to load
+     * @return        the loaded map, ready to be updated and drawn
+     */
+    public TileMap loadMap(String mapName) throws Exception {
+        ImageManager.getInstance();
+        TMXReader reader = new TMXReader(this, mapName);
+        reader.loadTMXTileMap();
+        TileMap tileMap = reader.getTileMap();
+        tileMap.setPlayer(new Player());
+        tileMap.setupEntities();
+        return tileMap;
+    }
+}
@@ -0,0 +1,25 @@
+package Benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * BenchmarkMain.java <hr>
+ * Entry point of the benchmarks jar. Accepts the usual JMH command line options and always adds
+ * the GC profiler, so every result comes with its allocation rate ({@code gc.alloc.rate.norm} is
+ * the number of bytes allocated per operation).
+ * <p>
+ * Usage (from the repository root): {@code java -jar benchmarks/target/benchmarks.jar [regexp] [options]}
+ */
+public class BenchmarkMain {
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder()
+            .parent(new CommandLineOptions(args))
+            .addProfiler(GCProfiler.class)
+            .build()
+        ).run();
+    }
+}
@@ -0,0 +1,69 @@
+package Benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import Tile.TileMap;
+
+/**
+ * CollisionBenchmark.java <hr>
+ * Measures the tile queries made by the player's collision checks. Each invocation runs a fixed
+ * set of queries at pseudo-random pixel coordinates spread over the whole map, so the mix of
+ * empty, occupied and out of bounds locations is the same on every run.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@State(Scope.Benchmark)
+public class CollisionBenchmark {
+
+    private static final int QUERY_COUNT = 1024;
+    private static final long SEED = 3609;
+
+    @Param({"ForestFrenzy", "WinterWasteland", "GraveyardShift", "MysteryCastle"})
+    public String mapName;
+
+    private TileMap tileMap;
+    private int[] xs;
+    private int[] ys;
+
+    @Setup
+    public void setup() throws Exception {
+        BenchmarkContext.silenceLogs();
+        tileMap = new BenchmarkContext().loadMap(mapName);
+
+        // Include a margin around the map so some queries fall out of bounds
+        int width = tileMap.getWidthPixels();
+        int height = TileMap.tilesToPixels(tileMap.getHeight());
+        Random random = new Random(SEED);
+        xs = new int[QUERY_COUNT];
+        ys = new int[QUERY_COUNT];
+        for (int i = 0; i < QUERY_COUNT; i++) {
+            xs[i] = random.nextInt(width + 128) - 64;
+            ys[i] = random.nextInt(height + 128) - 64;
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(QUERY_COUNT)
+    public void collidesWithTileCoords(Blackhole bh) {
+        for (int i = 0; i < QUERY_COUNT; i++) { bh.consume(tileMap.collidesWithTileCoords(xs[i], ys[i])); }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(QUERY_COUNT)
+    public void isSolidAt(Blackhole bh) {
+        for (int i = 0; i < QUERY_COUNT; i++) { bh.consume(tileMap.isSolidAt(xs[i], ys[i])); }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(QUERY_COUNT)
+    public void getTilesAtLocation(Blackhole bh) {
+        for (int i = 0; i < QUERY_COUNT; i++) { bh.consume(tileMap.getTilesAtLocation(xs[i], ys[i])); }
+    }
+}
@@ -0,0 +1,71 @@
+package Benchmarks;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import Entity.Coin;
+import Entity.Player;
+import Game.GamePanel;
+import Tile.TileMap;
+
+/**
+ * EntityBenchmark.java <hr>
+ * Measures a tick of the map's update, and drawing a frame as in {@link RenderBenchmark}, with
+ * extra coins scattered over the map, as on custom maps with thousands of collectibles. The coins
+ * are kept clear of the player's spawn, so none is collected and every tick does the same work.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@State(Scope.Benchmark)
+public class EntityBenchmark {
+
+    private static final long SEED = 3609;
+
+    @Param({"ForestFrenzy", "MysteryCastle"})
+    public String mapName;
+
+    @Param({"0", "1000", "10000"})
+    public int coinCount;
+
+    private TileMap tileMap;
+    private BufferedImage frame;
+    private Graphics2D g2;
+
+    @Setup
+    public void setup() throws Exception {
+        BenchmarkContext.silenceLogs();
+        tileMap = new BenchmarkContext().loadMap(mapName);
+
+        // The player spawns in the fourth column, so leave the first few columns empty
+        Player player = tileMap.getPlayer();
+        Random random = new Random(SEED);
+        for (int i = 0; i < coinCount; i++) {
+            int x = TileMap.tilesToPixels(8 + random.nextInt(Math.max(1, tileMap.getWidth() - 8)));
+            int y = TileMap.tilesToPixels(random.nextInt(tileMap.getHeight()));
+            tileMap.addEntity(new Coin(x, y, GamePanel.TILE_SIZE, GamePanel.TILE_SIZE, player));
+        }
+        frame = new BufferedImage(GamePanel.SCREEN_WIDTH, GamePanel.SCREEN_HEIGHT,
+            BufferedImage.TYPE_INT_RGB);
+        g2 = frame.createGraphics();
+    }
+
+    @TearDown
+    public void tearDown() { g2.dispose(); }
+
+    @Benchmark
+    public void update() { tileMap.update(); }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public BufferedImage draw() {
+        tileMap.draw(g2, 1.0);
+        return frame;
+    }
+}
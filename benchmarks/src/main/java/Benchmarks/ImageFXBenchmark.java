@@ -0,0 +1,62 @@
+package Benchmarks;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import Game.BrightnessFX;
+import Game.DisintegrateFX;
+import Managers.ImageManager;
+
+/**
+ * ImageFXBenchmark.java <hr>
+ * Measures the per-pixel loops of the image effects on a 512x486 sprite: a full
+ * {@link BrightnessFX} draw (copy, brighten every pixel, draw) and one pass of
+ * {@link DisintegrateFX#eraseImageParts(BufferedImage, int)} for each interval the effect uses.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@State(Scope.Benchmark)
+public class ImageFXBenchmark {
+
+    private static final String IMAGE = "butterfly.png";
+    private static final int[] ERASE_INTERVALS = { 11, 7, 5, 3, 2, 1 };
+
+    private BrightnessFX brightness;
+    private DisintegrateFX disintegrate;
+    private BufferedImage sprite;
+    private BufferedImage frame;
+    private Graphics2D g2;
+
+    @Setup
+    public void setup() {
+        BenchmarkContext.silenceLogs();
+        sprite = ImageManager.loadBufferedImage(IMAGE);
+        brightness = new BrightnessFX(IMAGE, sprite.getWidth(), sprite.getHeight(), 0, 0);
+        disintegrate = new DisintegrateFX(IMAGE, sprite.getWidth(), sprite.getHeight(), 0, 0);
+        frame = new BufferedImage(sprite.getWidth(), sprite.getHeight(), BufferedImage.TYPE_INT_RGB);
+        g2 = frame.createGraphics();
+    }
+
+    @TearDown
+    public void tearDown() { g2.dispose(); }
+
+    @Benchmark
+    public BufferedImage brightnessDraw() {
+        brightness.draw(g2);
+        return frame;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(6)
+    public BufferedImage disintegrateErase() {
+        BufferedImage copy = ImageManager.copyImage(sprite);
+        for (int interval : ERASE_INTERVALS) { disintegrate.eraseImageParts(copy, interval); }
+        return copy;
+    }
+}
@@ -0,0 +1,62 @@
+package Benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import Managers.ImageManager;
+import Tile.CompiledMap;
+import Tile.TMXReader;
+import Tile.TileMap;
+import Tile.TilesetCache;
+
+/**
+ * MapLoadBenchmark.java <hr>
+ * Measures {@link TMXReader#loadTMXTileMap()} for each shipped map: XML parsing, TSX parsing,
+ * tile image decoding and scaling, layer construction and background loading. The same load is
+ * also measured with the map's tilesets already in the {@link TilesetCache}, as when a level is
+ * replayed, and from the map's {@link CompiledMap}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@State(Scope.Benchmark)
+public class MapLoadBenchmark {
+
+    @Param({"ForestFrenzy", "WinterWasteland", "GraveyardShift", "MysteryCastle"})
+    public String mapName;
+
+    private BenchmarkContext context;
+
+    @Setup
+    public void setup() throws Exception {
+        BenchmarkContext.silenceLogs();
+        ImageManager.getInstance();
+        context = new BenchmarkContext();
+        // Writes the compiled map if it is missing or out of date
+        loadCompiledMap();
+    }
+
+    @Benchmark
+    public TileMap loadTMXTileMap() throws Exception {
+        TilesetCache.clear();
+        return reloadTMXTileMap();
+    }
+
+    @Benchmark
+    public TileMap reloadTMXTileMap() throws Exception {
+        TMXReader reader = new TMXReader(context, mapName);
+        reader.loadTMXTileMap();
+        return reader.getTileMap();
+    }
+
+    @Benchmark
+    public TileMap loadCompiledMap() throws Exception {
+        TMXReader reader = new TMXReader(context, mapName);
+        reader.setUseCompiledMap(true);
+        reader.loadTMXTileMap();
+        return reader.getTileMap();
+    }
+}
@@ -0,0 +1,58 @@
+package Benchmarks;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import Game.GamePanel;
+import Tile.TileMap;
+
+/**
+ * RenderBenchmark.java <hr>
+ * Measures drawing a full frame of each map with {@link TileMap#draw(Graphics2D, double)} into an
+ * offscreen {@link BufferedImage} the size of the game screen, with the player at its spawn point,
+ * and a frame in which only the HUD changed with {@link TileMap#drawChanges}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@State(Scope.Benchmark)
+public class RenderBenchmark {
+
+    @Param({"ForestFrenzy", "WinterWasteland", "GraveyardShift", "MysteryCastle"})
+    public String mapName;
+
+    private TileMap tileMap;
+    private BufferedImage frame;
+    private Graphics2D g2;
+
+    @Setup
+    public void setup() throws Exception {
+        BenchmarkContext.silenceLogs();
+        tileMap = new BenchmarkContext().loadMap(mapName);
+        frame = new BufferedImage(GamePanel.SCREEN_WIDTH, GamePanel.SCREEN_HEIGHT,
+            BufferedImage.TYPE_INT_RGB);
+        g2 = frame.createGraphics();
+        tileMap.drawChanges(g2, 1.0, true);
+    }
+
+    @TearDown
+    public void tearDown() { g2.dispose(); }
+
+    @Benchmark
+    public BufferedImage draw() {
+        tileMap.draw(g2, 1.0);
+        return frame;
+    }
+
+    @Benchmark
+    public BufferedImage drawHudChange() {
+        tileMap.getPlayer().addCoin();
+        tileMap.drawChanges(g2, 1.0, false);
+        return frame;
+    }
+}
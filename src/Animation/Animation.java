@@ -1,14 +1,21 @@
 package Animation;
-import java.awt.Image;
 import java.util.ArrayList;
 
+import Game.GamePanel;
+import Managers.TextureAtlas;
+
 
 /**
-    The Animation class manages a series of images (frames) and
-    the amount of time to display each frame.
+    The Animation class manages a series of atlas regions (frames) and
+    the amount of time to display each frame. Animations advance by
+    one simulation tick per update rather than by wall clock time, so
+    they play back identically for the same sequence of ticks.
 */
 public class Animation {
 
+    /** duration of a single simulation tick in milliseconds */
+    private static final double TICK_MILLIS = 1000.0 / GamePanel.TICK_RATE;
+
     /** name of the animation */
     protected String name;
     /** collection of frames for this animation */
@@ -17,8 +24,6 @@ public class Animation {
     protected int currFrameIndex;			    
     /** time that the animation has run for already */
     protected double animTime;			        
-    /** start time of the animation or time since last update */
-    protected double startTime;					
     /** total duration of the animation in milliseconds */
     protected double animationRuntime;			    
     /** if the animation should loop */
@@ -38,10 +43,11 @@ public class Animation {
     /** Accessors */
 
     /**
-     * Gets this Animation's current image. Returns null if this animation has no images.
+     * Gets the atlas region of this Animation's current image. Returns null if this animation has
+     * no images.
      */
-    public synchronized Image getImage() {
-        return (frames.size() == 0) ? null : getFrame(currFrameIndex).image;
+    public synchronized TextureAtlas.Region getRegion() {
+        return (frames.size() == 0) ? null : getFrame(currFrameIndex).region;
     }
 
     /**
@@ -96,12 +102,12 @@ public class Animation {
     /** 
      * Adds an image to the animation with the specified duration (time to display the image).
      * 
-     * @param image    image (AKA frame) to add to animation
+     * @param region   atlas region of the image (AKA frame) to add to animation
      * @param duration time (in milliseconds) to display the image
      */
-    public synchronized void addFrame(Image image, double duration) {
+    public synchronized void addFrame(TextureAtlas.Region region, double duration) {
         animationRuntime += duration;
-        frames.add(new AnimFrame(image, animationRuntime));
+        frames.add(new AnimFrame(region, animationRuntime));
     }
 
 
@@ -113,7 +119,6 @@ public class Animation {
     public synchronized void start() {
 	    isActive = true;
         animTime = currFrameIndex = 0;
-	    startTime = System.currentTimeMillis();
         System.out.println("[ANIMATION] Started animation: " + name);
     }
 
@@ -126,15 +131,15 @@ public class Animation {
     }
 
     /**
-     * Updates this animation's current image (frame), if neccesary.
+     * Advances this animation by one simulation tick and updates its current image (frame), 
+     * if neccesary.
      */
     public synchronized void update() {
 	    if (!isActive) { return; }
-        double ellapsedTime = System.currentTimeMillis() - startTime;
 
         // if no frames in animation to display
         if (frames.size() == 0) { return; }
-        animTime += ellapsedTime;                           // add elapsed time to amount of time animation has run for
+        animTime += TICK_MILLIS;                            // add elapsed time to amount of time animation has run for
         if (animTime >= animationRuntime) {			        // if the time animation has run for > total duration
             if (loop) {
                 animTime = animTime % animationRuntime;	    // reset time animation has run for
@@ -158,13 +163,13 @@ public class Animation {
      */
     private class AnimFrame {
 
-        /** Image for this particular frame */
-        Image image;
+        /** Atlas region of the image for this particular frame */
+        TextureAtlas.Region region;
         /** Time (in milliseconds) when screen time of this frame expires */
         double endTime;
 
-        public AnimFrame(Image image, double endTime) {
-            this.image = image;
+        public AnimFrame(TextureAtlas.Region region, double endTime) {
+            this.region = region;
             this.endTime = endTime;
         }
     }
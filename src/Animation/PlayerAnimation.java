@@ -1,8 +1,7 @@
 package Animation;
 
-import java.awt.Image;
-
 import Managers.ImageManager;
+import Managers.TextureAtlas;
 
 public class PlayerAnimation extends Animation {
 
@@ -17,9 +16,9 @@ public class PlayerAnimation extends Animation {
     private void loadPlayerAnimation() {
         int idx = 1;
         while (true) {
-            Image img = ImageManager.getImage(name + '_' + idx);
-            if (img == null) break;
-            addFrame(img, frameDuration);
+            TextureAtlas.Region frame = ImageManager.getRegion(name + '_' + idx);
+            if (frame == null) break;
+            addFrame(frame, frameDuration);
             idx++;
         }
     }
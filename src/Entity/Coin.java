@@ -14,8 +14,10 @@ public class Coin extends Collectible{
         this.visible = true;
     }
     
-    public Coin(Tile tile, Player player) {
-        this(tile.getX(), tile.getY(), 40, 40, player);
+    public Coin(Tile tile, int x, int y, Player player) {
+        super(tile, "coin", x, y, 40, 40, player);
+        this.numCoins = 0;
+        this.visible = true;
     }
     
     @Override
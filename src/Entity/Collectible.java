@@ -1,18 +1,26 @@
 package Entity;
 
 import java.awt.Graphics2D;
-import java.awt.Image;
+
 import Managers.ImageManager;
+import Tile.Tile;
 
 
 public abstract class Collectible extends Entity{
     private Player player;
-	private Image spriteImage;
+    /** Tile the collectible was spawned from, drawn in its place, or null */
+    private Tile tile;
     private int width, height;
 
     public Collectible(String imgName, int x, int y, int width, int height, Player player) {
+        this(null, imgName, x, y, width, height, player);
+    }
+
+    public Collectible(Tile tile, String imgName, int x, int y, int width, int height, 
+        Player player) {
         super(0, 0, 0, 0);
 		this.player = player;
+        this.tile = tile;
         this.width = width;
         this.height = height;
 		
@@ -23,7 +31,8 @@ public abstract class Collectible extends Entity{
 
     @Override
 	public void draw (Graphics2D g2d, int x, int y) {
-		g2d.drawImage(spriteImage, x, y, getWidth(), getHeight(), null);
+		if (tile != null) { tile.draw(g2d, x, y); }
+		else { g2d.drawImage(getImage(), x, y, getWidth(), getHeight(), null); }
 	}
 
     public int getWidth() {
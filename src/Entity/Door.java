@@ -10,8 +10,8 @@ public class Door extends Entity {
     private String doorName;
     private boolean visible;
 
-    public Door(Tile tile, Player player) {
-        super(tile.getX(), tile.getY(), GamePanel.TILE_SIZE, GamePanel.TILE_SIZE);
+    public Door(Tile tile, int x, int y, Player player) {
+        super(x, y, GamePanel.TILE_SIZE, GamePanel.TILE_SIZE);
         this.player = player;
         this.doorName = tile.getName();
         this.visible = true;
@@ -6,6 +6,8 @@ import java.awt.Image;
 import java.awt.Point;
 import java.awt.geom.Rectangle2D;
 
+import Managers.ImageManager;
+
 /**
  * The Entity class represents a game entity with position, size, and image properties.
  * It provides methods to access and modify these properties, as well as methods for drawing
@@ -19,9 +21,13 @@ public abstract class Entity {
     protected int height;
     protected Image image;
     protected Point position;
+    protected int previousX;
+    protected int previousY;
 
     public Entity(int x, int y, int width, int height) {
         this.position = new Point(x, y);
+        this.previousX = x;
+        this.previousY = y;
         this.width = width;
         this.height = height;
         this.dX = 0;
@@ -51,6 +57,28 @@ public abstract class Entity {
      */
     public int getY() { return (int) position.getY(); }
 
+    /**
+     * Returns the x-coordinate of the entity interpolated between its position at the start of
+     * the last simulation tick and its current position.
+     *
+     * @param alpha interpolation factor [0, 1]
+     * @return      the interpolated x-coordinate
+     */
+    public int getInterpolatedX(double alpha) {
+        return (int) Math.round(previousX + (position.getX() - previousX) * alpha);
+    }
+
+    /**
+     * Returns the y-coordinate of the entity interpolated between its position at the start of
+     * the last simulation tick and its current position.
+     *
+     * @param alpha interpolation factor [0, 1]
+     * @return      the interpolated y-coordinate
+     */
+    public int getInterpolatedY(double alpha) {
+        return (int) Math.round(previousY + (position.getY() - previousY) * alpha);
+    }
+
     /**
      * Returns the X axis delta of the entity.
      *
@@ -202,7 +230,7 @@ public abstract class Entity {
 
     /**
      * Sets the size of the entity to the specified dimensions. The entity's image is also scaled
-     * to match the new size (if it has an image).
+     * to match the new size (if it has an image), once, into a screen compatible image.
      * 
      * @param width  the width of the entity
      * @param height the height of the entity
@@ -213,7 +241,7 @@ public abstract class Entity {
         if (image == null) { return; }
         if (image.getWidth(null) == width && image.getHeight(null) == height) { return; }
         height = (int) ((double) image.getHeight(null) / image.getWidth(null) * height);
-        this.image = image.getScaledInstance(width, height, Image.SCALE_SMOOTH);
+        this.image = ImageManager.scaleImage(image, width, height);
     }
     
     /**
@@ -239,6 +267,15 @@ public abstract class Entity {
 
     /* Methods */
 
+    /**
+     * Records the entity's current position as its previous position. Called at the start of
+     * every simulation tick so that rendering can interpolate between ticks.
+     */
+    public void savePreviousPosition() {
+        previousX = getX();
+        previousY = getY();
+    }
+
     /**
      * Draws the entity onto the specified graphics context at the given x and y coordinates
      * 
@@ -5,8 +5,8 @@ import Tile.Tile;
 public class InvisiblePotion extends Collectible{
     private int numPotions;
 
-    public InvisiblePotion(Tile tile, Player player) {
-        super("potion", tile.getX(), tile.getY(), 30, 30, player);
+    public InvisiblePotion(Tile tile, int x, int y, Player player) {
+        super(tile, "potion", x, y, 30, 30, player);
         this.numPotions = 0;
     }
 
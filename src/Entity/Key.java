@@ -9,8 +9,8 @@ public class Key extends Collectible{
     private String keyName;
     private boolean visible;
     
-    public Key(Tile tile, Player player) {
-        super("key", tile.getX(), tile.getY(), 30, 30, player);
+    public Key(Tile tile, int x, int y, Player player) {
+        super(tile, "key", x, y, 30, 30, player);
         this.numKeys = 0;
         this.keyName = tile.getName();
         this.visible = true;
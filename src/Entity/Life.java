@@ -5,8 +5,8 @@ import Tile.Tile;
 public class Life extends Collectible{
     private int numLives;
 
-    public Life(Tile tile, Player player) {
-        super("life", tile.getX(), tile.getY(), 30, 30, player);
+    public Life(Tile tile, int x, int y, Player player) {
+        super(tile, "life", x, y, 30, 30, player);
         this.numLives = 3;
     }
 
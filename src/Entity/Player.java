@@ -4,8 +4,6 @@ package Entity;
  * Extended from Game Programming lab content
  */
 
-import java.awt.Image;
-import java.util.ArrayList;
 import java.util.HashMap;
 import java.awt.Graphics2D;
 
@@ -17,12 +15,15 @@ import Animation.*;
 
 public class Player extends MovingEntity {			
 
+    /** Time (in milliseconds) each frame of a player animation is shown for */
+    private static final long ANIMATION_FRAME_DURATION = 60;
+
     /** Reference to the TileMap */
     private TileMap tileMap;
     /** Time elapsed since start of jump or fall */
     private double timeElapsed;
-    /** Time at which jump or fall started */
-    private double timeStarted;
+    /** Number of simulation ticks since jump or fall started */
+    private long ticksElapsed;
     /** Initial velocity when falling */
     private double initialVelocity;
     /** Height at which player started to fall */
@@ -41,6 +42,8 @@ public class Player extends MovingEntity {
     private boolean climbingUp;
     /** True if player is climbing downwards, false if not */
     private boolean climbingDown;
+    /** True if player landed on a one-way tile and has not left it since */
+    private boolean onOneWay;
     /** Player's health */
     private int health;
     /** Player's maximum health */
@@ -53,6 +56,8 @@ public class Player extends MovingEntity {
     private long damageCooldown;
     /** Collection of all player animations */
     private HashMap<String, Animation> animations;
+    /** Atlas region of the player's image while no animation is playing */
+    private TextureAtlas.Region frame;
 
 
     public Player() {
@@ -68,7 +73,7 @@ public class Player extends MovingEntity {
         setDX(5);
         setDY(1);
         loadPlayerAnimations();
-        setImage(ImageManager.getImage("player_idle_right_1"));
+        setFrame("player_idle_right_1");
     }
 
 
@@ -175,32 +180,27 @@ public class Player extends MovingEntity {
     public boolean isInAir() {
         int x = getX() + (getWidth()/2);
         int y = getY() + getHeight();
-        if (tileMap.collidesWithTileCoords(x, y) == null) { return true; }
-        return false;
+        if (tileMap.isSolidAt(x, y)) { return false; }
+        return y != getCellTop(y) || !tileMap.hasPropertyAt(x, y, TileProperty.ONE_WAY);
     }
 
     private boolean isOnLadder() {
         int x = getX() + (getWidth()/2);
         int y = getY() + (getHeight()/2);
-        ArrayList<Tile> tiles = tileMap.getTilesAtLocation(x, y);
-        if (tiles == null) { return false; }
-        for (Tile t : tiles) {
-            if (t.getName().contains("ladder")) { return true; }
-        }
-        return false;
+        return tileMap.hasPropertyAt(x, y, TileProperty.LADDER);
     }
 
     private boolean isAboveLadder() {
         int x = getX() + (getWidth()/2);
         int y = getY() + getHeight() + 1;
-        ArrayList<Tile> tiles = tileMap.getTilesAtLocation(x, y);
-        if (tiles == null) { return false; }
-        for (Tile t : tiles) {
-            if (t.getName().contains("ladder")) { return true; }
-        }
-        return false;
+        return tileMap.hasPropertyAt(x, y, TileProperty.LADDER);
     }
 
+    /**
+     * Gets the y coordinate of the top of the tile row that contains the specified y coordinate.
+     */
+    private static int getCellTop(int y) { return TileMap.tilesToPixels(TileMap.pixelsToTiles(y)); }
+
 
     /* Mutators */
     
@@ -221,6 +221,16 @@ public class Player extends MovingEntity {
      */
     public void setTileMap(TileMap tileMap) { this.tileMap = tileMap; }
 
+    /**
+     * Sets the player's image to a packed player image, resizing the player to match it
+     * 
+     * @param name the name of the image
+     */
+    private void setFrame(String name) {
+        frame = ImageManager.getRegion(name);
+        setImage(frame.getImage());
+    }
+
     /**
      * Adds a key to the player's inventory
      * 
@@ -234,7 +244,7 @@ public class Player extends MovingEntity {
     /* Methods */
 
     @Override
-    public synchronized void move(Movement direction) {
+    public void move(Movement direction) {
         if (isTurning()) { return; }
         switch (direction) {
 
@@ -277,16 +287,11 @@ public class Player extends MovingEntity {
 
         if (damageCooldown > 0) { damageCooldown--; }
 
-        // Fix player clipping with ground
-        ArrayList<Tile> collidedTiles = tileMap.getTilesAtLocation(getX() + getWidth() / 2, getY() + getHeight());
-        if (collidedTiles != null && collidedTiles.size() > 0) {
-            Tile solidTile = null;
-            for (Tile t : collidedTiles) {
-                if (t.isSolid()) { solidTile = t; }
-            }
-            if (solidTile != null) {
-                setY(solidTile.getY() - getHeight());
-            }
+        // Fix player clipping with ground, or with the one-way tile it stands on
+        int feetY = getY() + getHeight();
+        if (tileMap.isSolidAt(getX() + getWidth() / 2, feetY) || (onOneWay && !isClimbingDown() &&
+            tileMap.hasPropertyAt(getX() + getWidth() / 2, feetY, TileProperty.ONE_WAY))) {
+            setY(getCellTop(feetY) - getHeight());
         }
         
         // Update all active animations
@@ -311,36 +316,32 @@ public class Player extends MovingEntity {
 
         // if there is a solid tile under the player, stop climbing down
         if (isClimbingDown()) {
-            Tile solidTile = tileMap.collidesWithTileCoords(getX() + getWidth() / 2, getY() + getHeight());
-            if (solidTile != null) {
+            feetY = getY() + getHeight();
+            if (tileMap.isSolidAt(getX() + getWidth() / 2, feetY)) {
                 climbingDown = false;
-                setY(solidTile.getY() - getHeight());
+                setY(getCellTop(feetY) - getHeight());
                 stand();
             }
         }
 
         // if at least half of the player's height is above a solid tile, stop climbing up
-        if (isClimbingUp()) {
-            ArrayList<Tile> above = tileMap.getTilesAtLocation(getX() + getWidth() / 2, getY() - 1);
-            if (above == null || above.size() == 0) { 
-                Tile solidTile = null;
-                for (Tile t : above) {
-                    if (t.isSolid()) { solidTile = t; }
-                }
-                if (solidTile != null && getY() - solidTile.getY() > getHeight() / 2) {
-                    climbingUp = false;
-                    stand();
-                    setY(solidTile.getY());
-                }
+        if (isClimbingUp() && tileMap.isSolidAt(getX() + getWidth() / 2, getY() - 1)) {
+            int solidTileY = getCellTop(getY() - 1);
+            if (getY() - solidTileY > getHeight() / 2) {
+                climbingUp = false;
+                stand();
+                setY(solidTileY);
             }
         }
         
         // Calculate the distance travelled since the last update
-        timeElapsed = (System.currentTimeMillis() - timeStarted)/1000;
+        ticksElapsed++;
+        timeElapsed = ticksElapsed * GamePanel.TICK_SECONDS;
         int distance = (int) ((initialVelocity * timeElapsed) + (4.9 * timeElapsed * timeElapsed));
         initialVelocity += 0.5 * timeElapsed;
         
         // Update position based on trajectory
+        feetY = getY() + getHeight();
         if (isJumping()) {
             initialVelocity -= 4.9 * timeElapsed;
             setY(jumpHeightStart - distance);
@@ -351,22 +352,42 @@ public class Player extends MovingEntity {
             initialVelocity += (9.8 * timeElapsed >= 60) ? 60 : 9.8 * timeElapsed;
             setY(fallHeightStart + distance);
         } 
+        landOnOneWay(feetY);
+    }
+
+    /**
+     * Stops the player on top of a one-way tile if its feet moved down past the top of the tile.
+     * 
+     * @param lastFeetY y coordinate of the player's feet before it moved
+     */
+    private void landOnOneWay(int lastFeetY) {
+        int x = getX() + (getWidth()/2);
+        int feetY = getY() + getHeight();
+        int top = getCellTop(feetY);
+        if (lastFeetY > top || feetY == top) { return; }
+        if (!tileMap.hasPropertyAt(x, feetY, TileProperty.ONE_WAY)) { return; }
+        setY(top - getHeight());
+        onOneWay = true;
     }
 
     @Override
     public void draw(Graphics2D g2d, int x, int y) {
-        Image img = getImage();
+        // draw player's current image
+        getCurrentRegion().draw(g2d, x, y);
+    }
+
+    /**
+     * Gets the image the player is currently drawn with: the current frame of the last active
+     * animation, or the player's still frame.
+     * 
+     * @return the atlas region of the image
+     */
+    public TextureAtlas.Region getCurrentRegion() {
+        TextureAtlas.Region region = frame;
         for (Animation anim : animations.values()) {
-            if (anim.isStillActive()) { img = anim.getImage(); }
+            if (anim.isStillActive()) { region = anim.getRegion(); }
         }
-
-        // draw player's current image
-        g2d.drawImage(
-            img, x, y,
-            img.getWidth(null), 
-            img.getHeight(null), 
-            null
-        );
+        return region;
     }
 
     private void loadPlayerAnimations() {
@@ -381,7 +402,7 @@ public class Player extends MovingEntity {
         };
         animations = new HashMap<String, Animation>();
         for (String name : animationNames) {
-            Animation anim = new PlayerAnimation("player_" + name, 5000);
+            Animation anim = new PlayerAnimation("player_" + name, ANIMATION_FRAME_DURATION);
             animations.put(name, anim);
             System.out.println("[PLAYER] Loaded animation: " + anim.getName());
         }
@@ -436,10 +457,10 @@ public class Player extends MovingEntity {
         facingLeft = !facingLeft;
         if (isInAir()) { return; }
         animations.get((facingLeft) ? "turn_left" : "turn_right").start(); 
-        setImage(ImageManager.getImage((facingLeft) ? 
+        setFrame((facingLeft) ? 
             (crouching ? "player_crouch_left_1" : "player_idle_left_1") : 
             (crouching ? "player_crouch_right_1" : "player_idle_right_1")
-        ));
+        );
     }
 
     private void moveLeft() {
@@ -463,12 +484,13 @@ public class Player extends MovingEntity {
     }
 
     private void fall() {
+        onOneWay = false;
         if (!animations.get(facingLeft ? "fall_left" : "fall_right").isStillActive()) doFallAnimation();
         if (isJumping() || isFalling()) { return; }
         falling = true;
         initialVelocity = 60;
         timeElapsed = 0;
-        timeStarted = System.currentTimeMillis();
+        ticksElapsed = 0;
         fallHeightStart = getY();
     }
 
@@ -479,20 +501,21 @@ public class Player extends MovingEntity {
             return;
         }
         jumping = true;
+        onOneWay = false;
         initialVelocity = 400;
         timeElapsed = 0;
-        timeStarted = System.currentTimeMillis();
+        ticksElapsed = 0;
         jumpHeightStart = getY();
-        if (facingLeft) { setImage(ImageManager.getImage("player_jump_left_1")); }
-        else { setImage(ImageManager.getImage("player_jump_right_1")); }
+        if (facingLeft) { setFrame("player_jump_left_1"); }
+        else { setFrame("player_jump_right_1"); }
         doJumpAnimation();
     }
 
     public void crouch() {
         if (isCrouching()) { return; }
         int lastHeight = getHeight();
-        if (facingLeft) { setImage(ImageManager.getImage("player_crouch_left_1")); }
-        else { setImage(ImageManager.getImage("player_crouch_right_1")); }
+        if (facingLeft) { setFrame("player_crouch_left_1"); }
+        else { setFrame("player_crouch_right_1"); }
         if (!crouching) {
             crouching = true;
             setY(getY() + (lastHeight - getHeight()));
@@ -503,8 +526,8 @@ public class Player extends MovingEntity {
     public void stand() {
         if (isClimbingUp()) { return; }
         int lastHeight = getHeight();
-        if (facingLeft) { setImage(ImageManager.getImage("player_idle_left_1")); }
-        else { setImage(ImageManager.getImage("player_idle_right_1")); }
+        if (facingLeft) { setFrame("player_idle_left_1"); }
+        else { setFrame("player_idle_right_1"); }
         if (crouching) {
             crouching = false;
             setY(getY() - (getHeight() - lastHeight));
@@ -515,7 +538,7 @@ public class Player extends MovingEntity {
         if (!isClimbingUp()) {
             if (isOnLadder()) { climbingUp = true; }
             if (!climbingUp) { return; }
-            setImage(ImageManager.getImage("player_climb_up_1"));
+            setFrame("player_climb_up_1");
         }
         setY(getY() - (getDY() * 2));
         if (animations.get("climb_up").isStillActive()) { return; }
@@ -526,15 +549,11 @@ public class Player extends MovingEntity {
         if (!isClimbingDown()) {
             if (isAboveLadder()) { climbingDown = true; }
             if (!climbingDown) { return; }
-            setImage(ImageManager.getImage("player_climb_down_1"));
+            setFrame("player_climb_down_1");
 
             // position player on ladder
-            ArrayList<Tile> tiles = tileMap.getTilesAtLocation(getX() + getWidth()/2, getY() + getHeight() + 10);
-            for (Tile t : tiles) {
-                if (t.getName().contains("ladder")) {
-                    setY(getY() + getHeight());
-                    break;
-                }
+            if (tileMap.hasPropertyAt(getX() + getWidth()/2, getY() + getHeight() + 10, TileProperty.LADDER)) {
+                setY(getY() + getHeight());
             }
         }
         setY(getY() + (getDY() * 2));
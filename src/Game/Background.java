@@ -2,7 +2,6 @@ package Game;
 
 import java.awt.Graphics2D;
 import java.awt.Image;
-import javax.swing.JPanel;
 
 public class Background {
   	private Image bgImage;
@@ -13,7 +12,7 @@ public class Background {
 	private int bgDX;
     
 
-	public Background(JPanel panel, Image img, int bgDX) {
+	public Background(Image img, int bgDX) {
         this.bgImage = img;
         bgImageWidth = bgImage.getWidth(null);
         this.bgDX = bgDX;
@@ -0,0 +1,117 @@
+package Game;
+
+import java.awt.Rectangle;
+
+/**
+ * DirtyRegion.java <hr>
+ * The parts of the screen that changed since the last frame was drawn, so that a frame in which
+ * the camera has not moved only needs to redraw those parts. It is kept as a few disjoint
+ * rectangles clipped to the screen: a rectangle overlapping or touching an existing one is merged
+ * with it, and once there are {@link #MAX_RECTANGLES} they are merged into their bounding box.
+ * The whole screen can also be marked, e.g. when the camera scrolls.
+ */
+public class DirtyRegion {
+
+    /** Most rectangles held before they are merged into one */
+    public static final int MAX_RECTANGLES = 8;
+
+    private final int width;
+    private final int height;
+    private final Rectangle[] rectangles;
+    private int count;
+    private boolean full;
+
+    /**
+     * Creates a region with the whole screen marked, as nothing has been drawn yet.
+     *
+     * @param width  width of the screen in pixels
+     * @param height height of the screen in pixels
+     */
+    public DirtyRegion(int width, int height) {
+        this.width = width;
+        this.height = height;
+        rectangles = new Rectangle[MAX_RECTANGLES];
+        for (int i = 0; i < MAX_RECTANGLES; i++) { rectangles[i] = new Rectangle(); }
+        full = true;
+    }
+
+
+    /* Accessors */
+
+    public boolean isEmpty() { return !full && count == 0; }
+
+    /**
+     * Checks if the whole screen is marked.
+     */
+    public boolean isFull() { return full; }
+
+    /**
+     * Gets the number of rectangles marked, if not the whole screen.
+     */
+    public int getCount() { return count; }
+
+    /**
+     * Gets a marked rectangle. It is reused by the region and must not be kept.
+     *
+     * @param index index of the rectangle, less than {@link #getCount()}
+     */
+    public Rectangle getRectangle(int index) { return rectangles[index]; }
+
+
+    /* Mutators */
+
+    /**
+     * Marks a rectangle of the screen. The part outside the screen is ignored.
+     *
+     * @param x x-coordinate of the rectangle in screen pixels
+     * @param y y-coordinate of the rectangle in screen pixels
+     * @param w width of the rectangle in pixels
+     * @param h height of the rectangle in pixels
+     */
+    public void add(int x, int y, int w, int h) {
+        if (full) { return; }
+        int x1 = Math.max(0, x);
+        int y1 = Math.max(0, y);
+        int x2 = Math.min(width, x + w);
+        int y2 = Math.min(height, y + h);
+        if (x1 >= x2 || y1 >= y2) { return; }
+
+        // Grow the rectangle by every rectangle it reaches, which may then reach others
+        for (int i = 0; i < count; i++) {
+            Rectangle r = rectangles[i];
+            if (r.x > x2 || x1 > r.x + r.width || r.y > y2 || y1 > r.y + r.height) { continue; }
+            x1 = Math.min(x1, r.x);
+            y1 = Math.min(y1, r.y);
+            x2 = Math.max(x2, r.x + r.width);
+            y2 = Math.max(y2, r.y + r.height);
+            rectangles[i] = rectangles[--count];
+            rectangles[count] = r;
+            i = -1;
+        }
+
+        if (count == MAX_RECTANGLES) {
+            for (int i = 0; i < count; i++) {
+                Rectangle r = rectangles[i];
+                x1 = Math.min(x1, r.x);
+                y1 = Math.min(y1, r.y);
+                x2 = Math.max(x2, r.x + r.width);
+                y2 = Math.max(y2, r.y + r.height);
+            }
+            count = 0;
+        }
+        rectangles[count++].setBounds(x1, y1, x2 - x1, y2 - y1);
+    }
+
+    /**
+     * Marks the whole screen.
+     */
+    public void addAll() { full = true; }
+
+    /**
+     * Unmarks everything, once the marked parts have been drawn.
+     */
+    public void clear() {
+        full = false;
+        count = 0;
+    }
+}
@@ -0,0 +1,212 @@
+package Game;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Graphics2D;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+/**
+ * FrameProfiler.java <hr>
+ * Records how long each phase of a frame takes (simulation update, background, each tile layer,
+ * HUD, player and the final blit) into a fixed-size {@link Histogram} per phase. Timing a phase
+ * never allocates, and costs nothing beyond a flag check while the profiler is disabled.
+ * <p>
+ * Usage around a phase:
+ * <pre>
+ *     long start = FrameProfiler.start();
+ *     ...
+ *     FrameProfiler.stop(FrameProfiler.UPDATE, start);
+ * </pre>
+ * While enabled, an overlay with the p50/p99/max of every phase can be drawn on top of the
+ * frame, and the histograms can be exported to a CSV file.
+ */
+public class FrameProfiler {
+
+    private static final int MAX_PHASES = 64;
+    private static final String EXPORT_PREFIX = "profile-";
+
+    private static final String[] phaseNames = new String[MAX_PHASES];
+    private static final Histogram[] histograms = new Histogram[MAX_PHASES];
+    /** Simulation tick during which each phase recorded its maximum */
+    private static final long[] maxTicks = new long[MAX_PHASES];
+    private static long currentTick = 0;
+    private static volatile int phaseCount = 0;
+    private static volatile boolean enabled = false;
+    private static volatile String exportLabel = null;
+    private static Font overlayFont = null;
+
+    public static final int FRAME = registerPhase("frame");
+    public static final int UPDATE = registerPhase("update");
+    public static final int BACKGROUND = registerPhase("background");
+    public static final int HUD = registerPhase("hud");
+    public static final int PLAYER = registerPhase("player");
+    public static final int BLIT = registerPhase("blit");
+
+    private FrameProfiler() {}
+
+
+    /* Accessors */
+
+    public static boolean isEnabled() { return enabled; }
+
+
+    /* Mutators */
+
+    /**
+     * Sets the simulation tick that subsequent timings belong to, so that the slowest sample of
+     * each phase can be traced back to a tick of an input replay.
+     *
+     * @param tick the current simulation tick
+     */
+    public static void setTick(long tick) { currentTick = tick; }
+
+
+    /* Methods */
+
+    /**
+     * Registers a named phase and returns its id. Registering a name twice returns the id of the
+     * existing phase. Should be called while loading, not per frame.
+     *
+     * @param name name of the phase shown in the overlay and export
+     * @return     id of the phase to pass to {@link #stop(int, long)}
+     */
+    public static synchronized int registerPhase(String name) {
+        for (int i = 0; i < phaseCount; i++) {
+            if (phaseNames[i].equals(name)) { return i; }
+        }
+        if (phaseCount == MAX_PHASES) {
+            throw new IllegalStateException("[FRAME PROFILER] Too many phases: " + name);
+        }
+        phaseNames[phaseCount] = name;
+        histograms[phaseCount] = new Histogram();
+        return phaseCount++;
+    }
+
+    /**
+     * Marks the start of a phase.
+     *
+     * @return start timestamp to pass to {@link #stop(int, long)}
+     */
+    public static long start() { return enabled ? System.nanoTime() : 0L; }
+
+    /**
+     * Marks the end of a phase and records its duration.
+     *
+     * @param phase     id of the phase
+     * @param startTime timestamp returned by {@link #start()}
+     */
+    public static void stop(int phase, long startTime) {
+        if (!enabled || startTime == 0L) { return; }
+        long duration = System.nanoTime() - startTime;
+        if (duration > histograms[phase].getMax()) { maxTicks[phase] = currentTick; }
+        histograms[phase].record(duration);
+    }
+
+    /**
+     * Enables or disables recording and the overlay. Recorded values are cleared whenever the
+     * profiler is enabled.
+     */
+    public static void toggle() {
+        if (!enabled) { reset(); }
+        enabled = !enabled;
+        System.out.println("[FRAME PROFILER] " + (enabled ? "Enabled" : "Disabled"));
+    }
+
+    /**
+     * Clears all recorded values.
+     */
+    public static synchronized void reset() {
+        for (int i = 0; i < phaseCount; i++) { 
+            histograms[i].reset(); 
+            maxTicks[i] = 0;
+        }
+    }
+
+    /**
+     * Requests that the histograms be exported at the end of the current frame. Safe to call from
+     * any thread.
+     *
+     * @param label label written to the export, e.g. the name of the current map
+     */
+    public static void requestExport(String label) { exportLabel = label; }
+
+    /**
+     * Called by the game thread once a frame has been presented. Performs any pending export.
+     */
+    public static void endFrame() {
+        String label = exportLabel;
+        if (label == null) { return; }
+        exportLabel = null;
+        String timestamp = new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date());
+        exportCSV(new File(EXPORT_PREFIX + timestamp + ".csv"), label);
+    }
+
+    /**
+     * Writes a summary of every phase followed by the non-empty buckets of each histogram as CSV.
+     * All durations are in nanoseconds.
+     *
+     * @param file  file to write to
+     * @param label label written at the top of the file
+     */
+    public static synchronized void exportCSV(File file, String label) {
+        try (PrintWriter writer = new PrintWriter(new FileWriter(file))) {
+            writer.println("# " + label);
+            writer.println("phase,count,min,mean,p50,p90,p99,max,max_tick");
+            for (int i = 0; i < phaseCount; i++) {
+                Histogram h = histograms[i];
+                writer.println(phaseNames[i] + "," + h.getTotalCount() + "," + h.getMin() + "," +
+                    Math.round(h.getMean()) + "," + h.getValueAtPercentile(50) + "," +
+                    h.getValueAtPercentile(90) + "," + h.getValueAtPercentile(99) + "," + 
+                    h.getMax() + "," + maxTicks[i]);
+            }
+
+            writer.println();
+            writer.println("phase,bucket_low,bucket_high,count");
+            for (int i = 0; i < phaseCount; i++) {
+                Histogram h = histograms[i];
+                for (int b = 0; b < h.getBucketCount(); b++) {
+                    if (h.getCount(b) == 0) { continue; }
+                    writer.println(phaseNames[i] + "," + Histogram.getBucketLow(b) + "," +
+                        Histogram.getBucketHigh(b) + "," + h.getCount(b));
+                }
+            }
+            System.out.println("[FRAME PROFILER] Exported histograms to " + file.getAbsolutePath());
+        } catch (IOException e) { e.printStackTrace(); }
+    }
+
+    /**
+     * Draws the p50/p99/max (in milliseconds) of every phase that has recorded values.
+     *
+     * @param g2 graphics context to draw onto
+     */
+    public static void drawOverlay(Graphics2D g2) {
+        if (!enabled) { return; }
+        if (overlayFont == null) { overlayFont = new Font(Font.MONOSPACED, Font.PLAIN, 11); }
+
+        int lineHeight = 13;
+        int rows = 1;
+        for (int i = 0; i < phaseCount; i++) { if (histograms[i].getTotalCount() > 0) { rows++; } }
+
+        g2.setColor(new Color(0, 0, 0, 160));
+        g2.fillRect(4, 4, 400, rows * lineHeight + 6);
+        g2.setFont(overlayFont);
+        g2.setColor(Color.GREEN);
+
+        int y = 4 + lineHeight;
+        g2.drawString(String.format("%-20s %7s %7s %7s %9s", "phase (ms)", "p50", "p99", "max", "@tick"),
+            8, y);
+        for (int i = 0; i < phaseCount; i++) {
+            Histogram h = histograms[i];
+            if (h.getTotalCount() == 0) { continue; }
+            y += lineHeight;
+            g2.drawString(String.format("%-20.20s %7.2f %7.2f %7.2f %9d", phaseNames[i],
+                h.getValueAtPercentile(50) / 1e6, h.getValueAtPercentile(99) / 1e6, h.getMax() / 1e6,
+                maxTicks[i]), 8, y);
+        }
+    }
+}
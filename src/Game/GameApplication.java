@@ -1,8 +1,22 @@
 package Game;
+
+import java.io.File;
+
+/**
+ * Usage: {@code java Game.GameApplication [--record <file>] [--replay <file>]}
+ * <p>
+ * {@code --record} saves the input of each game started to the file, replacing the recording of
+ * the game before, and {@code --replay} plays back a previously recorded file when the game is
+ * started.
+ */
 public class GameApplication
 {
 	public static void main (String[] args) {
-        new GameWindow();
+        GameWindow window = new GameWindow();
+        for (int i = 0; i < args.length - 1; i++) {
+            if (args[i].equals("--record")) { window.getGamePanel().setRecordFile(new File(args[++i])); }
+            else if (args[i].equals("--replay")) { window.getGamePanel().setReplayFile(new File(args[++i])); }
+        }
 	}
 
 }
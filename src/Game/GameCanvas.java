@@ -0,0 +1,229 @@
+package Game;
+
+import java.awt.AWTException;
+import java.awt.BufferCapabilities;
+import java.awt.Canvas;
+import java.awt.Color;
+import java.awt.Container;
+import java.awt.Dimension;
+import java.awt.Frame;
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.GraphicsDevice;
+import java.awt.ImageCapabilities;
+import java.awt.RenderingHints;
+import java.awt.Toolkit;
+import java.awt.image.BufferStrategy;
+import java.awt.image.VolatileImage;
+
+/**
+ * GameCanvas.java <hr>
+ * Heavyweight drawing surface used for active rendering. Frames are presented through a
+ * page-flipped {@code BufferStrategy} from the game thread, bypassing Swing's repaint machinery.
+ * <p>
+ * The scene is rendered into an accelerated {@code VolatileImage} at the game's native resolution,
+ * which keeps its contents from frame to frame, so a {@link Scene} only has to redraw the parts
+ * that changed. The contents of a page-flipped buffer are undefined after a flip, so presenting
+ * a frame always copies the whole scene; a frame in which nothing was drawn is not presented at
+ * all, apart from every {@link #REFRESH_NANOS} in case the window was damaged.
+ * <p>
+ * The canvas can also be moved into a full-screen exclusive window. In that case the scene is
+ * scaled up to fit the display when presented.
+ */
+public class GameCanvas extends Canvas {
+
+    private static final long serialVersionUID = 1L;
+    private static final int NUM_BUFFERS = 2;
+    /** Longest time an unchanged scene goes without being presented again */
+    private static final long REFRESH_NANOS = 500_000_000L;
+
+    private final int width;
+    private final int height;
+    private VolatileImage sceneBuffer;
+    private long lastPresentTime;
+    private volatile Frame fullScreenFrame;
+    private Container windowedParent;
+
+    /**
+     * Creates a canvas with the given logical resolution.
+     *
+     * @param width  width of the rendered scene in pixels
+     * @param height height of the rendered scene in pixels
+     */
+    public GameCanvas(int width, int height) {
+        this.width = width;
+        this.height = height;
+        setIgnoreRepaint(true);
+        setBackground(Color.BLACK);
+        setPreferredSize(new Dimension(width, height));
+    }
+
+
+    /* Accessors */
+
+    /**
+     * Checks if the canvas is currently shown in full-screen exclusive mode.
+     *
+     * @return {@code true} if in full-screen mode, {@code false} otherwise
+     */
+    public boolean isFullScreen() { return fullScreenFrame != null; }
+
+
+    /* Methods */
+
+    /**
+     * Updates the scene and presents it if it changed. The scene is drawn again in full if the
+     * scene buffer's contents were lost, and presented again for as long as the underlying
+     * surfaces report that their contents were lost or restored while presenting.
+     *
+     * @param scene draws the changes to the scene onto the scene buffer
+     */
+    public void render(Scene scene) {
+        if (!isDisplayable()) { return; }
+        try {
+            BufferStrategy strategy = getBufferStrategy();
+            if (strategy == null) {
+                createStrategy();
+                // the new surfaces hold nothing, so draw and present the whole scene next frame
+                sceneBuffer = null;
+                return;
+            }
+
+            boolean changed = renderScene(scene);
+            if (!changed && System.nanoTime() - lastPresentTime < REFRESH_NANOS) { return; }
+            do {
+                do {
+                    Graphics2D g2 = (Graphics2D) strategy.getDrawGraphics();
+                    try {
+                        if (isFullScreen()) { presentScaled(g2); }
+                        else { g2.drawImage(sceneBuffer, 0, 0, null); }
+                    } finally { g2.dispose(); }
+                } while (strategy.contentsRestored());
+
+                long start = FrameProfiler.start();
+                strategy.show();
+                Toolkit.getDefaultToolkit().sync();
+                FrameProfiler.stop(FrameProfiler.BLIT, start);
+            } while (strategy.contentsLost());
+            lastPresentTime = System.nanoTime();
+
+        } catch (IllegalStateException e) {
+            // The peer was torn down mid-frame (e.g. while switching to full-screen mode).
+            // A new strategy is created on the next frame.
+        }
+    }
+
+    /**
+     * Moves the canvas into (or out of) a full-screen exclusive window on its current display.
+     * Must be called on the event dispatch thread.
+     *
+     * @param fullScreen {@code true} to enter full-screen mode, {@code false} to leave it
+     */
+    public void setFullScreen(boolean fullScreen) {
+        if (fullScreen == isFullScreen()) { return; }
+        GraphicsDevice device = getGraphicsConfiguration().getDevice();
+
+        if (fullScreen) {
+            windowedParent = getParent();
+            Frame frame = new Frame(device.getDefaultConfiguration());
+            frame.setUndecorated(true);
+            frame.setIgnoreRepaint(true);
+            windowedParent.remove(this);
+            frame.add(this);
+            fullScreenFrame = frame;
+            if (device.isFullScreenSupported()) {
+                device.setFullScreenWindow(frame);
+                System.out.println("[GAME CANVAS] Entered full-screen mode");
+            } else {
+                frame.setExtendedState(Frame.MAXIMIZED_BOTH);
+                frame.setVisible(true);
+                System.out.println("[GAME CANVAS] Full-screen exclusive mode not supported, " +
+                    "using a maximised window instead");
+            }
+            requestFocus();
+            return;
+        }
+
+        Frame frame = fullScreenFrame;
+        fullScreenFrame = null;
+        if (device.getFullScreenWindow() == frame) { device.setFullScreenWindow(null); }
+        frame.remove(this);
+        frame.dispose();
+        windowedParent.add(this);
+        windowedParent.validate();
+        System.out.println("[GAME CANVAS] Left full-screen mode");
+    }
+
+    private void createStrategy() {
+        BufferCapabilities capabilities = new BufferCapabilities(
+            new ImageCapabilities(true),
+            new ImageCapabilities(true),
+            BufferCapabilities.FlipContents.UNDEFINED
+        );
+        try { createBufferStrategy(NUM_BUFFERS, capabilities); }
+        catch (AWTException e) { createBufferStrategy(NUM_BUFFERS); }
+        System.out.println("[GAME CANVAS] Created buffer strategy (page flipping: " +
+            getBufferStrategy().getCapabilities().isPageFlipping() + ")");
+    }
+
+    /**
+     * Lets the scene draw its changes onto the scene buffer, or the whole scene if the buffer was
+     * just created or its contents were lost.
+     *
+     * @return true if anything was drawn
+     */
+    private boolean renderScene(Scene scene) {
+        GraphicsConfiguration gc = getGraphicsConfiguration();
+        boolean changed = false;
+        do {
+            boolean full = true;
+            int status = (sceneBuffer == null) ?
+                VolatileImage.IMAGE_INCOMPATIBLE : sceneBuffer.validate(gc);
+            if (status == VolatileImage.IMAGE_INCOMPATIBLE) {
+                sceneBuffer = gc.createCompatibleVolatileImage(width, height);
+            } else { full = (status == VolatileImage.IMAGE_RESTORED); }
+
+            Graphics2D bufferContext = sceneBuffer.createGraphics();
+            try { changed |= scene.draw(bufferContext, full); }
+            finally { bufferContext.dispose(); }
+        } while (sceneBuffer.contentsLost());
+        return changed;
+    }
+
+    private void presentScaled(Graphics2D g2) {
+        // letterbox the scene to preserve its aspect ratio
+        double scale = Math.min((double) getWidth() / width, (double) getHeight() / height);
+        int scaledWidth = (int) (width * scale);
+        int scaledHeight = (int) (height * scale);
+        g2.setColor(Color.BLACK);
+        g2.fillRect(0, 0, getWidth(), getHeight());
+        g2.setRenderingHint(
+            RenderingHints.KEY_INTERPOLATION,
+            RenderingHints.VALUE_INTERPOLATION_BILINEAR
+        );
+        g2.drawImage(
+            sceneBuffer,
+            (getWidth() - scaledWidth) / 2, (getHeight() - scaledHeight) / 2,
+            scaledWidth, scaledHeight,
+            null
+        );
+    }
+
+
+    /**
+     * Draws the scene onto the canvas's scene buffer, which still holds the last frame drawn
+     * unless its contents were lost.
+     */
+    public interface Scene {
+
+        /**
+         * Draws the parts of the scene that changed since the last frame.
+         *
+         * @param g2   graphics context of the scene buffer
+         * @param full whether the whole scene must be drawn, as the buffer no longer holds the
+         *             last frame
+         * @return     true if anything was drawn, false if the scene is unchanged
+         */
+        boolean draw(Graphics2D g2, boolean full);
+    }
+}
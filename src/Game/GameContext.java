@@ -0,0 +1,34 @@
+package Game;
+
+/**
+ * GameContext.java <hr>
+ * The environment a level runs in. It provides the size of the viewport and is notified when the
+ * level or the game ends. {@link GamePanel} implements this for the windowed game and
+ * {@link HeadlessRunner} implements it to run levels without a display.
+ */
+public interface GameContext {
+
+    /**
+     * Gets the width of the viewport the level is drawn into.
+     * 
+     * @return width in pixels
+     */
+    public int getWidth();
+
+    /**
+     * Gets the height of the viewport the level is drawn into.
+     * 
+     * @return height in pixels
+     */
+    public int getHeight();
+
+    /**
+     * Called when the player has run out of health.
+     */
+    public void endGame();
+
+    /**
+     * Called when the player has reached the exit of the current level.
+     */
+    public void endLevel();
+}
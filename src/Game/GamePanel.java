@@ -2,11 +2,15 @@ package Game;
 
 
 import javax.swing.JPanel;
+import java.awt.BorderLayout;
 import java.awt.Color;
 import java.awt.Graphics2D;
 import java.awt.event.KeyEvent;
 import java.awt.geom.Rectangle2D;
-import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
 
 import Tile.*;
 import Entity.*;
@@ -16,22 +20,46 @@ import Managers.*;
    A component that displays all the game entities
 */
 
-public class GamePanel extends JPanel implements Runnable {
+public class GamePanel extends JPanel implements Runnable, GameContext {
 
     public static final int TILE_SIZE = 64;
-    private final int FPS = 60;
+    public static final int SCREEN_WIDTH = 600;
+    public static final int SCREEN_HEIGHT = 500;
+    /** Number of simulation ticks per second */
+    public static final int TICK_RATE = 60;
+    /** Duration of a single simulation tick in nanoseconds */
+    public static final long TICK_NANOS = 1_000_000_000L / TICK_RATE;
+    /** Duration of a single simulation tick in seconds */
+    public static final double TICK_SECONDS = 1.0 / TICK_RATE;
+    /** Maximum number of ticks simulated in a single frame when catching up */
+    private static final int MAX_CATCHUP_TICKS = 5;
+    /** Longest time a tick waits for the next level to finish loading before drawing a frame */
+    private static final long LOAD_SLICE_NANOS = 2_000_000L;
 	private boolean isRunning;
 	private boolean isPaused;
 
 	private Thread gameThread;
 
-	private BufferedImage image;
+	private GameCanvas canvas;
+	private GameCanvas.Scene sceneRenderer;
+	private double renderAlpha;
+	private boolean overlayShown;
 
     public Player player;
 	private TileMapManager tileManager;
     private TileMap tileMap;
 
+    private InputQueue input;
     private Movement lastMovement;
+    private File recordFile;
+    private File replayFile;
+    private InputRecorder recorder;
+    private InputReplayer replayer;
+    private Random random;
+    private long tick;
+    private static final int[] MOVEMENT_KEYS = {
+        KeyEvent.VK_LEFT, KeyEvent.VK_RIGHT, KeyEvent.VK_SPACE, KeyEvent.VK_DOWN, KeyEvent.VK_UP
+    };
 	private boolean levelChange;
 	private int level;
 	private boolean gameOver;
@@ -41,79 +69,220 @@ public class GamePanel extends JPanel implements Runnable {
     };
 
 	public GamePanel () {
-        ImageManager.getInstance();
-        SoundManager.getInstance();
-        SaveDataManager.getInstance();
+        AssetLoader.loadAll();
 		isRunning = isPaused = false;
-		image = new BufferedImage (600, 500, BufferedImage.TYPE_INT_RGB);
+		input = new InputQueue();
+		canvas = new GameCanvas(SCREEN_WIDTH, SCREEN_HEIGHT);
+		sceneRenderer = this::drawScene;
+		setLayout(new BorderLayout());
+		add(canvas, BorderLayout.CENTER);
         tileManager = new TileMapManager(this);
 		level = 0;
 		levelChange = false;
 	}
 
 
+	/**
+	 * Gets the game's random number generator. It is seeded when a game starts and the seed is
+	 * stored in input recordings, so any simulation code drawing from it replays identically.
+	 * 
+	 * @return the seeded random number generator
+	 */
+	public Random getRandom() { return random; }
+
+
+	/**
+	 * Gets the number of simulation ticks run since the current game started.
+	 */
+	public long getTick() { return tick; }
+
+
+	/**
+	 * Records the input of every subsequently started game to the specified file. Each game
+	 * overwrites the file, so it holds the recording of the last game started.
+	 * 
+	 * @param file the file to record to, or null to stop recording new games
+	 */
+	public void setRecordFile(File file) {
+		if (recordFile == null && file != null) {
+			Runtime.getRuntime().addShutdownHook(new Thread(this::stopRecording));
+		}
+		recordFile = file;
+	}
+
+
+	/**
+	 * Replays the input recorded in the specified file when the next game is started. The game 
+	 * starts on the level the recording was made on and live input is ignored until the 
+	 * recording is exhausted.
+	 * 
+	 * @param file the recording to replay, or null to play normally
+	 */
+	public void setReplayFile(File file) { replayFile = file; }
+
+
+	/**
+	 * Gets the surface the game is actively rendered onto.
+	 * 
+	 * @return the game canvas
+	 */
+	public GameCanvas getCanvas() { return canvas; }
+
+
 	public void createGameEntities() {
         player = new Player();
 	}
 
 
+	/**
+	 * Fixed timestep game loop. Simulation ticks are run at {@link #TICK_RATE} regardless of
+	 * how long each frame takes to render; when the loop falls behind, up to 
+	 * {@link #MAX_CATCHUP_TICKS} ticks are run back-to-back before the next frame is drawn. 
+	 * Any time left over in the accumulator is passed to the renderer as an interpolation 
+	 * factor between the previous and current simulation states. While the game is paused, over
+	 * or changing level, no tick moves the player, so the current state is drawn as it is.
+	 */
 	public void run () {
-        double targetTime = 1000 / FPS;
-        double nextDrawTime = System.currentTimeMillis() + targetTime;
-        double deltaTime = 0;
+        long previousTime = System.nanoTime();
+        long accumulator = 0;
+        InputRecorder gameRecorder = recorder;
 
 		try {
 			isRunning = true;
 			while (isRunning) {
-                deltaTime = Math.max(nextDrawTime - System.currentTimeMillis(), 0);
-                if (!isPaused && !gameOver) { gameUpdate(); }
-                gameRender();
-                Thread.sleep((int) (deltaTime));
+                long currentTime = System.nanoTime();
+                accumulator += currentTime - previousTime;
+                previousTime = currentTime;
+
+                int ticks = 0;
+                while (accumulator >= TICK_NANOS && ticks < MAX_CATCHUP_TICKS) {
+                    if (!isPaused && !gameOver) {
+                        long start = FrameProfiler.start();
+                        gameUpdate();
+                        FrameProfiler.stop(FrameProfiler.UPDATE, start);
+                    } else { input.clear(); }
+                    accumulator -= TICK_NANOS;
+                    ticks++;
+                }
+
+                // Too far behind to catch up, drop the backlog rather than spiral
+                if (accumulator >= TICK_NANOS) { accumulator %= TICK_NANOS; }
+
+                // Nothing moves while the game is frozen, so draw the current state as it is
+                boolean frozen = isPaused || gameOver || levelChange;
+                long frameStart = FrameProfiler.start();
+                gameRender(frozen ? 1.0 : (double) accumulator / TICK_NANOS);
+                FrameProfiler.stop(FrameProfiler.FRAME, frameStart);
+                FrameProfiler.endFrame();
+
+                // Sleep until the next tick is due
+                long sleepTime = TICK_NANOS - accumulator - (System.nanoTime() - currentTime);
+                if (sleepTime > 0) {
+                    Thread.sleep(sleepTime / 1_000_000, (int) (sleepTime % 1_000_000));
+                }
 			}
 		}
 		catch(InterruptedException e) {}
+		// only close this game's recording, not one a new game has already opened
+		if (recorder == gameRecorder) { stopRecording(); }
 	}
 
 
 	public void gameUpdate() {
-		tileMap.update();
+		// The finished level is frozen until the next one has been swapped in
+		if (!levelChange) {
+			processInput();
+			tileMap.update();
+		}
 
-		if (levelChange) {
-			levelChange = false;
-            createGameEntities();
+		if (levelChange) { changeLevel(); }
+	}
 
-			try {
-				tileMap = tileManager.loadTileMap(mapNames[level]);
-                tileMap.setPlayer(player);
-                tileMap.setupEntities();
-				System.out.println ("[GAMEPANEL] Changing level to Level " + level);
-			
-            } catch (Exception e) {
-				gameOver = true;
-				System.out.println(e);
-				System.out.println("[GAMEPANEL] Game Over"); 
-				return;
-			}
 
+	/**
+	 * Swaps in the next level once the background loader has finished it. Each tick waits at 
+	 * most {@link #LOAD_SLICE_NANOS} for the load, so frames (and the loading progress bar) keep
+	 * being drawn if the level was not preloaded in time.
+	 */
+	private void changeLevel() {
+		TileMap nextMap;
+		try {
+			if (level >= mapNames.length) { throw new Exception("No level after Level " + (level - 1)); }
+			nextMap = tileManager.pollTileMap(mapNames[level], LOAD_SLICE_NANOS);
+
+		} catch (Exception e) {
+			levelChange = false;
+			gameOver = true;
+			System.out.println(e);
+			System.out.println("[GAMEPANEL] Game Over"); 
 			return;
 		}
+		if (nextMap == null) { return; }
+
+		createGameEntities();
+		nextMap.setPlayer(player);
+		nextMap.setupEntities();
+		tileMap = nextMap;
+		levelChange = false;
+		System.out.println ("[GAMEPANEL] Changing level to Level " + level);
+		preloadNextLevel();
 	}
 
 
-	public void gameRender() {
-		Graphics2D imageContext = (Graphics2D) image.getGraphics();
+	/**
+	 * Starts loading the level after the current one in the background, if there is one.
+	 */
+	private void preloadNextLevel() {
+		if (level + 1 < mapNames.length) { tileManager.preloadTileMap(mapNames[level + 1]); }
+	}
+
+
+	/**
+	 * Renders the current frame and presents it on the game canvas. Only the parts of the scene
+	 * that changed are redrawn, and an unchanged frame is not presented.
+	 * 
+	 * @param alpha interpolation factor between the previous and current tick [0, 1]
+	 */
+	public void gameRender(double alpha) {
+		renderAlpha = alpha;
+		canvas.render(sceneRenderer);
+	}
 
-		tileMap.draw (imageContext);
+
+	/**
+	 * Draws the changes to the scene. Overlays are translucent and cover the whole screen, so the
+	 * scene is drawn in full while one is shown and on the frame after.
+	 */
+	private boolean drawScene(Graphics2D g2, boolean full) {
+		boolean overlay = gameOver || levelChange || FrameProfiler.isEnabled();
+		full |= overlay || overlayShown;
+		overlayShown = overlay;
+		if (!tileMap.drawChanges (g2, renderAlpha, full)) { return false; }
 
 		if (gameOver) {
 			Color darken = new Color (0, 0, 0, 125);
-			imageContext.setColor (darken);
-			imageContext.fill (new Rectangle2D.Double (0, 0, 600, 500));
+			g2.setColor (darken);
+			g2.fill (new Rectangle2D.Double (0, 0, SCREEN_WIDTH, SCREEN_HEIGHT));
 		}
+		else if (levelChange) { drawLoadingProgress(g2); }
 
-		Graphics2D g2 = (Graphics2D) getGraphics();
-		g2.drawImage(image, 0, 0, 600, 500, null);
-		imageContext.dispose();
+		FrameProfiler.drawOverlay(g2);
+		return true;
+	}
+
+
+	private void drawLoadingProgress(Graphics2D g2) {
+		int barWidth = SCREEN_WIDTH / 2;
+		int barHeight = 12;
+		int x = (SCREEN_WIDTH - barWidth) / 2;
+		int y = SCREEN_HEIGHT / 2;
+
+		g2.setColor (new Color (0, 0, 0, 125));
+		g2.fill (new Rectangle2D.Double (0, 0, SCREEN_WIDTH, SCREEN_HEIGHT));
+		g2.setColor (Color.WHITE);
+		g2.drawString ("Loading Level " + level + "...", x, y - 8);
+		g2.drawRect (x, y, barWidth, barHeight);
+		g2.fillRect (x, y, (int) (barWidth * tileManager.getLoadProgress()), barHeight);
 	}
 
 
@@ -121,15 +290,19 @@ public class GamePanel extends JPanel implements Runnable {
 		if (gameThread != null || !isRunning) {
 
 			endGame();
+			stopGameThread();
 			gameOver = false;
 			level = 0;
             System.out.println("[GAMEPANEL] Starting new game");
 
 			try {
+                openInputRecording();
                 createGameEntities();
 				tileMap = tileManager.loadTileMap(mapNames[level]);
                 tileMap.setPlayer(player);
                 tileMap.setupEntities();
+				levelChange = false;
+				preloadNextLevel();
 			}
 			catch (Exception e) {
 				e.printStackTrace();
@@ -143,6 +316,46 @@ public class GamePanel extends JPanel implements Runnable {
 	}
 
 
+	/**
+	 * Waits for the previous game's thread to finish its last frame, so it no longer touches the
+	 * game's state or recording once a new game is set up.
+	 */
+	private void stopGameThread() {
+		Thread thread = gameThread;
+		if (thread == null || thread == Thread.currentThread()) { return; }
+		try { thread.join(); }
+		catch (InterruptedException e) { Thread.currentThread().interrupt(); }
+		gameThread = null;
+	}
+
+
+	private void openInputRecording() throws IOException {
+		stopRecording();
+		replayer = null;
+		tick = 0;
+		long seed = System.nanoTime();
+
+		if (replayFile != null) {
+			replayer = new InputReplayer(replayFile);
+			seed = replayer.getSeed();
+			level = Arrays.asList(mapNames).indexOf(replayer.getLevelName());
+			if (level < 0) {
+				throw new IOException("Unknown level in recording: " + replayer.getLevelName());
+			}
+		}
+
+		random = new Random(seed);
+		if (recordFile != null) { recorder = new InputRecorder(recordFile, mapNames[level], seed); }
+	}
+
+
+	private void stopRecording() {
+		InputRecorder r = recorder;
+		recorder = null;
+		if (r != null) { r.close(); }
+	}
+
+
 	public void pauseGame() {
 		if (isRunning) {
 			isPaused = !isPaused;
@@ -150,6 +363,31 @@ public class GamePanel extends JPanel implements Runnable {
 	}
 
 
+	/**
+	 * Switches the game canvas between windowed and full-screen exclusive mode.
+	 * Must be called on the event dispatch thread.
+	 */
+	public void toggleFullScreen() {
+		canvas.setFullScreen(!canvas.isFullScreen());
+	}
+
+
+	/**
+	 * Toggles the frame profiler and its on-screen overlay.
+	 */
+	public void toggleProfiler() {
+		FrameProfiler.toggle();
+	}
+
+
+	/**
+	 * Exports the frame profiler's histograms to a CSV file once the current frame completes.
+	 */
+	public void exportProfile() {
+		FrameProfiler.requestExport("map=" + mapNames[level] + ", tick rate=" + TICK_RATE);
+	}
+
+
 	public void endGame() {
 		isRunning = false;
 		SoundManager.stopMusicClip("background");
@@ -161,48 +399,99 @@ public class GamePanel extends JPanel implements Runnable {
 	}
 
 
-    public void handleKeyInput(int keyCode) {
-        if (gameOver) { return; }
-        Movement movement = Movement.INVALID;
+    /**
+     * Records a key press. Called on the event dispatch thread; the press is applied by the game
+     * thread at the start of the next tick.
+     * 
+     * @param keyCode the key code that was pressed
+     */
+    public void handleKeyPressed(int keyCode) { input.keyPressed(keyCode); }
+
+    /**
+     * Records a key release. Called on the event dispatch thread.
+     * 
+     * @param keyCode the key code that was released
+     */
+    public void handleKeyReleased(int keyCode) { input.keyReleased(keyCode); }
+
+    /**
+     * Releases all held keys, e.g. when the window loses focus.
+     */
+    public void releaseAllKeys() { input.releaseAll(); }
+
+    /**
+     * Drains the input queue and applies this tick's movements. A movement is applied once per
+     * tick if its key was pressed since the last tick or is still held down. Movements are 
+     * applied in {@link Movement} declaration order. While replaying, the recorded movements are
+     * applied instead, and while recording, the applied movements are written out.
+     */
+    private void processInput() {
+        int movements = 0;
+        int keyCode;
+        while ((keyCode = input.poll()) != InputQueue.EMPTY) {
+            Movement movement = getMovement(keyCode);
+            if (movement == Movement.INVALID) { continue; }
+            movements |= movement.bit();
+
+            if (movement != lastMovement) {
+                System.out.println ("[GAMEPANEL] Action: " + movement.toString());
+                lastMovement = movement;
+            }
+        }
+        for (int key : MOVEMENT_KEYS) {
+            if (input.isHeld(key)) { movements |= getMovement(key).bit(); }
+        }
+
+        // A replay overrides live input until it runs out
+        if (replayer != null) {
+            try {
+                int replayed = replayer.nextTick();
+                if (replayed >= 0) { movements = replayed; }
+                else { replayer = null; }
+            } catch (IOException e) {
+                System.out.println("[GAMEPANEL] Replay failed at tick " + tick + ": " + e);
+                replayer = null;
+            }
+        }
+
+        if (recorder != null) {
+            try { recorder.record(movements); }
+            catch (IOException e) {
+                System.out.println("[GAMEPANEL] Recording failed at tick " + tick + ": " + e);
+                recorder.close();
+                recorder = null;
+            }
+        }
+
+        tileMap.handleMovements(movements);
+        FrameProfiler.setTick(++tick);
+    }
+
+    private static Movement getMovement(int keyCode) {
         switch (keyCode) {
 
             // Begin crouching or climb ladder
             case KeyEvent.VK_DOWN:
-                movement = Movement.CROUCH;
-                tileMap.crouch();
-                break;
+                return Movement.CROUCH;
 
             // Stop crouching or climb ladder
             case KeyEvent.VK_UP:
-                movement = Movement.STAND;
-                tileMap.stand();
-                break;
+                return Movement.STAND;
 
             // Jump
             case KeyEvent.VK_SPACE:
-                movement = Movement.JUMP;    
-                tileMap.jump();
-                break;
+                return Movement.JUMP;
             
             // Move left
             case KeyEvent.VK_LEFT:
-                movement = Movement.LEFT;
-                tileMap.moveLeft();
-                break;
+                return Movement.LEFT;
             
             // Move right
             case KeyEvent.VK_RIGHT:
-                movement = Movement.RIGHT;
-                tileMap.moveRight();
-                break;
+                return Movement.RIGHT;
 
             default:
-                break;
-        }
-        
-        if (movement != lastMovement) {
-            System.out.println ("[GAMEPANEL] Action: " + movement.toString());
-            lastMovement = movement;
+                return Movement.INVALID;
         }
     }
 
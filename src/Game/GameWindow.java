@@ -126,13 +126,19 @@ public class GameWindow extends JFrame
 		mainPanel.setBackground(Color.BLACK);
 
 		// set up mainPanel to respond to keyboard and mouse
-		gamePanel.addMouseListener(this);
+		gamePanel.getCanvas().addMouseListener(this);
+		gamePanel.getCanvas().addKeyListener(this);
 		mainPanel.addKeyListener(this);
 
 		// add mainPanel to window surface
 		c = getContentPane();
 		c.add(mainPanel);
 
+		// release held keys if focus is lost, as no key released events will arrive
+		addWindowFocusListener(new WindowAdapter() {
+			public void windowLostFocus(WindowEvent e) { gamePanel.releaseAllKeys(); }
+		});
+
 		// set properties of window
 		setResizable(true);
 		setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
@@ -144,6 +150,12 @@ public class GameWindow extends JFrame
 
 
 	
+    /**
+     * Gets the panel the game is played in.
+     */
+    public GamePanel getGamePanel() { return gamePanel; }
+
+
     /** ActionListener method */
 
 	public void actionPerformed(ActionEvent e) {
@@ -173,10 +185,18 @@ public class GameWindow extends JFrame
 		int keyCode = e.getKeyCode();
 		String keyText = KeyEvent.getKeyText(keyCode);
 		keyTF.setText(keyText + " pressed.");
-        gamePanel.handleKeyInput(keyCode);
+        switch (keyCode) {
+            case KeyEvent.VK_F3:  gamePanel.toggleProfiler();   return;
+            case KeyEvent.VK_F4:  gamePanel.exportProfile();    return;
+            case KeyEvent.VK_F11: gamePanel.toggleFullScreen(); return;
+            default: break;
+        }
+        gamePanel.handleKeyPressed(keyCode);
 	}
 
-	public void keyReleased(KeyEvent e) {}
+	public void keyReleased(KeyEvent e) {
+        gamePanel.handleKeyReleased(e.getKeyCode());
+    }
 
 	public void keyTyped(KeyEvent e) {}
 
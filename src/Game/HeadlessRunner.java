@@ -0,0 +1,174 @@
+package Game;
+
+import java.io.File;
+import java.util.ArrayList;
+
+import Entity.Player;
+import Tile.TMXReader;
+import Tile.TileMap;
+
+/**
+ * HeadlessRunner.java <hr>
+ * Runs a single level without a window, audio or display. The level is loaded through the
+ * {@link TMXReader} and {@link TileMap#update()} is stepped as fast as possible while a scripted
+ * sequence of movements is fed to the player. The achieved tick rate is reported at the end.
+ * <p>
+ * Usage: {@code java Game.HeadlessRunner <mapName> [ticks] [script]}
+ * <br>
+ * or: {@code java Game.HeadlessRunner --replay <file> [ticks]}
+ * <p>
+ * The script is a comma or whitespace separated list of {@link Movement} names, each optionally
+ * followed by {@code *count} to repeat it for that many ticks. {@code IDLE} applies no movement.
+ * The script loops until the requested number of ticks has been run. For example:
+ * {@code "RIGHT*120, JUMP, RIGHT*30, IDLE*20, LEFT*60"}
+ * <p>
+ * Alternatively the input recorded by {@link InputRecorder} can be replayed on the map it was
+ * recorded on, until the recording ends. Unlike {@link GamePanel}, the runner restarts the same
+ * map when the level ends, so a replay only matches the windowed game up to the first level exit.
+ */
+public class HeadlessRunner implements GameContext {
+
+    private static final int DEFAULT_TICKS = 100_000;
+    private static final String DEFAULT_SCRIPT = "RIGHT*120, JUMP, RIGHT*40, IDLE*20, LEFT*90, JUMP";
+    private static final long REPORT_INTERVAL_NANOS = 1_000_000_000L;
+
+    private final String mapName;
+    private final int[] script;
+    private final int[] scriptCounts;
+    private final InputReplayer replayer;
+    private TileMap tileMap;
+    private boolean restartLevel;
+    private int levelsCompleted;
+    private int gamesLost;
+
+    public HeadlessRunner(String mapName, String script) {
+        this.mapName = mapName;
+        this.replayer = null;
+        ArrayList<Integer> movements = new ArrayList<>();
+        ArrayList<Integer> counts = new ArrayList<>();
+        for (String token : script.trim().split("[,\\s]+")) {
+            if (token.isEmpty()) { continue; }
+            String[] parts = token.split("\\*");
+            String name = parts[0].trim().toUpperCase();
+            movements.add(name.equals("IDLE") ? 0 : Movement.valueOf(name).bit());
+            counts.add(parts.length > 1 ? Integer.parseInt(parts[1].trim()) : 1);
+        }
+        if (movements.isEmpty()) { throw new IllegalArgumentException("Input script is empty"); }
+        this.script = new int[movements.size()];
+        this.scriptCounts = new int[counts.size()];
+        for (int i = 0; i < scriptCounts.length; i++) {
+            this.script[i] = movements.get(i);
+            scriptCounts[i] = counts.get(i);
+        }
+    }
+
+    public HeadlessRunner(InputReplayer replayer) {
+        this.mapName = replayer.getLevelName();
+        this.replayer = replayer;
+        this.script = null;
+        this.scriptCounts = null;
+    }
+
+
+    /* GameContext */
+
+    @Override
+    public int getWidth() { return GamePanel.SCREEN_WIDTH; }
+
+    @Override
+    public int getHeight() { return GamePanel.SCREEN_HEIGHT; }
+
+    @Override
+    public void endGame() {
+        gamesLost++;
+        restartLevel = true;
+    }
+
+    @Override
+    public void endLevel() {
+        levelsCompleted++;
+        restartLevel = true;
+    }
+
+
+    /* Methods */
+
+    /**
+     * Loads (or reloads) the level with a fresh player.
+     */
+    public void loadLevel() throws Exception {
+        TMXReader reader = new TMXReader(this, mapName);
+        reader.loadTMXTileMap();
+        tileMap = reader.getTileMap();
+        tileMap.setPlayer(new Player());
+        tileMap.setupEntities();
+        restartLevel = false;
+    }
+
+    /**
+     * Steps the simulation for the specified number of ticks, or until the replay ends, reporting
+     * progress once a second.
+     *
+     * @param ticks maximum number of ticks to run
+     */
+    public void run(long ticks) throws Exception {
+        int scriptIndex = 0;
+        int scriptRepeat = 0;
+        long startTime = System.nanoTime();
+        long lastReportTime = startTime;
+        long lastReportTick = 0;
+
+        long tick;
+        for (tick = 0; tick < ticks; tick++) {
+            int movements;
+            if (replayer != null) {
+                if ((movements = replayer.nextTick()) < 0) { break; }
+            } else {
+                movements = script[scriptIndex];
+                if (++scriptRepeat >= scriptCounts[scriptIndex]) {
+                    scriptRepeat = 0;
+                    scriptIndex = (scriptIndex + 1) % script.length;
+                }
+            }
+            tileMap.handleMovements(movements);
+
+            tileMap.update();
+            if (restartLevel) { loadLevel(); }
+
+            long now = System.nanoTime();
+            if (now - lastReportTime >= REPORT_INTERVAL_NANOS) {
+                System.out.printf("[HEADLESS] tick %d: %.0f ticks/s%n", tick + 1,
+                    (tick + 1 - lastReportTick) * 1e9 / (now - lastReportTime));
+                lastReportTime = now;
+                lastReportTick = tick + 1;
+            }
+        }
+
+        double seconds = (System.nanoTime() - startTime) / 1e9;
+        System.out.printf("[HEADLESS] Ran %d ticks of '%s' in %.3fs (%.0f ticks/s, %.1fx real time)%n",
+            tick, mapName, seconds, tick / seconds, tick / seconds / GamePanel.TICK_RATE);
+        System.out.println("[HEADLESS] Levels completed: " + levelsCompleted +
+            ", games lost: " + gamesLost);
+    }
+
+    public static void main(String[] args) throws Exception {
+        System.setProperty("java.awt.headless", "true");
+        if (args.length < 1) {
+            System.out.println("Usage: java Game.HeadlessRunner <mapName> [ticks] [script]");
+            System.out.println("   or: java Game.HeadlessRunner --replay <file> [ticks]");
+            return;
+        }
+
+        HeadlessRunner runner;
+        long ticks;
+        if (args[0].equals("--replay") && args.length > 1) {
+            runner = new HeadlessRunner(new InputReplayer(new File(args[1])));
+            ticks = args.length > 2 ? Long.parseLong(args[2]) : Long.MAX_VALUE;
+        } else {
+            runner = new HeadlessRunner(args[0], args.length > 2 ? args[2] : DEFAULT_SCRIPT);
+            ticks = args.length > 1 ? Long.parseLong(args[1]) : DEFAULT_TICKS;
+        }
+        runner.loadLevel();
+        runner.run(ticks);
+    }
+}
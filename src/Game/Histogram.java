@@ -0,0 +1,129 @@
+package Game;
+
+import java.util.Arrays;
+
+/**
+ * Histogram.java <hr>
+ * Fixed-size histogram of non-negative {@code long} values (typically nanosecond durations) with
+ * roughly 3% precision. Values are grouped into log-linear buckets: each power of two range is
+ * split into 32 equally sized sub-buckets, so small values are recorded exactly and large values
+ * keep a constant relative error. All storage is allocated up front and recording never allocates.
+ */
+public class Histogram {
+
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    /** Largest value that can be told apart from larger ones (about 68 seconds in nanoseconds) */
+    private static final long MAX_TRACKABLE_VALUE = (1L << 36) - 1;
+    private static final int BUCKET_COUNT = indexOf(MAX_TRACKABLE_VALUE) + 1;
+
+    private final long[] counts;
+    private long totalCount;
+    private long total;
+    private long min;
+    private long max;
+
+    public Histogram() {
+        counts = new long[BUCKET_COUNT];
+        reset();
+    }
+
+
+    /* Accessors */
+
+    public long getTotalCount() { return totalCount; }
+
+    public long getMin() { return (totalCount == 0) ? 0 : min; }
+
+    public long getMax() { return max; }
+
+    public double getMean() { return (totalCount == 0) ? 0 : (double) total / totalCount; }
+
+    /**
+     * Gets the number of buckets in this histogram.
+     */
+    public int getBucketCount() { return BUCKET_COUNT; }
+
+    /**
+     * Gets the number of values recorded in the specified bucket.
+     *
+     * @param index bucket index
+     * @return      number of values recorded in the bucket
+     */
+    public long getCount(int index) { return counts[index]; }
+
+    /**
+     * Gets the smallest value that is recorded in the specified bucket.
+     *
+     * @param index bucket index
+     * @return      lowest value of the bucket
+     */
+    public static long getBucketLow(int index) {
+        if (index < 2 * SUB_BUCKET_COUNT) { return index; }
+        int shift = index / SUB_BUCKET_COUNT - 1;
+        return (long) (index % SUB_BUCKET_COUNT + SUB_BUCKET_COUNT) << shift;
+    }
+
+    /**
+     * Gets the largest value that is recorded in the specified bucket.
+     *
+     * @param index bucket index
+     * @return      highest value of the bucket
+     */
+    public static long getBucketHigh(int index) {
+        if (index < 2 * SUB_BUCKET_COUNT) { return index; }
+        int shift = index / SUB_BUCKET_COUNT - 1;
+        return ((long) (index % SUB_BUCKET_COUNT + SUB_BUCKET_COUNT + 1) << shift) - 1;
+    }
+
+    /**
+     * Gets the value below which the given percentage of recorded values fall. The result is
+     * the upper bound of the bucket that contains the percentile, capped at the recorded maximum.
+     *
+     * @param percentile percentile to look up [0, 100]
+     * @return           value at the percentile, or 0 if nothing has been recorded
+     */
+    public long getValueAtPercentile(double percentile) {
+        if (totalCount == 0) { return 0; }
+        long target = Math.max(1, (long) Math.ceil(percentile / 100.0 * totalCount));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += counts[i];
+            if (seen >= target) { return Math.min(getBucketHigh(i), max); }
+        }
+        return max;
+    }
+
+
+    /* Methods */
+
+    /**
+     * Records a single value. Negative values are recorded as zero and values beyond the
+     * trackable range are recorded in the last bucket.
+     *
+     * @param value the value to record
+     */
+    public void record(long value) {
+        if (value < 0) { value = 0; }
+        counts[indexOf(Math.min(value, MAX_TRACKABLE_VALUE))]++;
+        totalCount++;
+        total += value;
+        if (value < min) { min = value; }
+        if (value > max) { max = value; }
+    }
+
+    /**
+     * Clears all recorded values.
+     */
+    public void reset() {
+        Arrays.fill(counts, 0);
+        totalCount = total = max = 0;
+        min = Long.MAX_VALUE;
+    }
+
+    private static int indexOf(long value) {
+        if (value < 2 * SUB_BUCKET_COUNT) { return (int) value; }
+        int shift = (63 - Long.numberOfLeadingZeros(value)) - SUB_BUCKET_BITS;
+        return shift * SUB_BUCKET_COUNT + (int) (value >> shift);
+    }
+}
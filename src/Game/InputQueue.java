@@ -0,0 +1,116 @@
+package Game;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * InputQueue.java <hr>
+ * Hands keyboard input from the Swing event dispatch thread to the game thread without locks.
+ * <p>
+ * Key presses are written to a single-producer/single-consumer ring buffer, and a bitset records
+ * which keys are currently held down. The event dispatch thread is the only producer and the game
+ * thread the only consumer, which drains the queue once at the start of every tick. Presses of a
+ * key that is already held (OS key auto-repeat) are not queued, so held keys are handled by
+ * polling {@link #isHeld(int)} once per tick instead.
+ */
+public class InputQueue {
+
+    /** Value returned by {@link #poll()} when the queue is empty */
+    public static final int EMPTY = -1;
+
+    private static final int CAPACITY = 64;
+    private static final int MASK = CAPACITY - 1;
+    private static final int MAX_KEY_CODE = 255;
+
+    private final int[] events;
+    /** Index of the next event to read, only written by the consumer */
+    private final AtomicLong head;
+    /** Index of the next event to write, only written by the producer */
+    private final AtomicLong tail;
+    private final AtomicLongArray heldKeys;
+
+    public InputQueue() {
+        events = new int[CAPACITY];
+        head = new AtomicLong();
+        tail = new AtomicLong();
+        heldKeys = new AtomicLongArray((MAX_KEY_CODE + 1) / 64);
+    }
+
+
+    /* Accessors */
+
+    /**
+     * Checks if a key is currently held down. Safe to call from any thread.
+     *
+     * @param keyCode the key code to check
+     * @return        {@code true} if the key is held, {@code false} otherwise
+     */
+    public boolean isHeld(int keyCode) {
+        if (keyCode < 0 || keyCode > MAX_KEY_CODE) { return false; }
+        return (heldKeys.get(keyCode >>> 6) & (1L << keyCode)) != 0;
+    }
+
+
+    /* Producer methods (event dispatch thread) */
+
+    /**
+     * Records a key press. Repeated presses of a key that is already held are ignored.
+     *
+     * @param keyCode the key code that was pressed
+     */
+    public void keyPressed(int keyCode) {
+        if (isHeld(keyCode)) { return; }
+        setHeld(keyCode, true);
+
+        long t = tail.get();
+        if (t - head.get() == CAPACITY) {
+            System.out.println("[INPUT QUEUE] Queue full, dropped key: " + keyCode);
+            return;
+        }
+        events[(int) (t & MASK)] = keyCode;
+        tail.lazySet(t + 1);
+    }
+
+    /**
+     * Records a key release.
+     *
+     * @param keyCode the key code that was released
+     */
+    public void keyReleased(int keyCode) { setHeld(keyCode, false); }
+
+    /**
+     * Marks every key as released, e.g. when the window loses focus and release events will not
+     * be delivered.
+     */
+    public void releaseAll() {
+        for (int i = 0; i < heldKeys.length(); i++) { heldKeys.set(i, 0); }
+    }
+
+    private void setHeld(int keyCode, boolean held) {
+        if (keyCode < 0 || keyCode > MAX_KEY_CODE) { return; }
+        int word = keyCode >>> 6;
+        long bits = heldKeys.get(word);
+        heldKeys.set(word, held ? (bits | (1L << keyCode)) : (bits & ~(1L << keyCode)));
+    }
+
+
+    /* Consumer methods (game thread) */
+
+    /**
+     * Removes and returns the oldest queued key press.
+     *
+     * @return the key code, or {@link #EMPTY} if no presses are queued
+     */
+    public int poll() {
+        long h = head.get();
+        if (h == tail.get()) { return EMPTY; }
+        int keyCode = events[(int) (h & MASK)];
+        head.lazySet(h + 1);
+        return keyCode;
+    }
+
+    /**
+     * Discards all queued key presses.
+     */
+    public void clear() { head.lazySet(tail.get()); }
+}
@@ -0,0 +1,95 @@
+package Game;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * InputRecorder.java <hr>
+ * Records the movements applied on every simulation tick to a compact binary file, which
+ * {@link InputReplayer} can feed back through the same tick path.
+ * <p>
+ * File layout (big-endian, as written by {@code DataOutputStream}):
+ * <pre>
+ *     int    magic        'MMMR'
+ *     short  version
+ *     UTF    level name   map the recording starts on
+ *     long   seed         seed of the game's random number generator
+ *     runs   ...          (byte movement mask, varint tick count) pairs
+ *     byte   END_OF_RUNS
+ * </pre>
+ * Consecutive ticks with the same movement mask are stored as a single run, so long stretches of
+ * idling or holding a key take only a few bytes.
+ */
+public class InputRecorder {
+
+    public static final int MAGIC = 0x4D4D4D52;
+    public static final short VERSION = 1;
+    public static final int END_OF_RUNS = 0xFF;
+
+    private final File file;
+    private DataOutputStream out;
+    private int runMask;
+    private long runLength;
+    private long ticks;
+
+    /**
+     * Creates the recording file and writes its header.
+     *
+     * @param file      the file to record to
+     * @param levelName name of the map the recording starts on
+     * @param seed      seed of the game's random number generator
+     */
+    public InputRecorder(File file, String levelName, long seed) throws IOException {
+        this.file = file;
+        out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+        out.writeInt(MAGIC);
+        out.writeShort(VERSION);
+        out.writeUTF(levelName);
+        out.writeLong(seed);
+        System.out.println("[INPUT RECORDER] Recording '" + levelName + "' to " + file.getPath());
+    }
+
+
+    /* Methods */
+
+    /**
+     * Records the movements applied on one tick.
+     *
+     * @param movements mask of {@link Movement#bit()} values
+     */
+    public synchronized void record(int movements) throws IOException {
+        if (out == null) { return; }
+        if (runLength > 0 && movements != runMask) { writeRun(); }
+        runMask = movements;
+        runLength++;
+        ticks++;
+    }
+
+    /**
+     * Writes any pending run and closes the file. Further calls to {@link #record(int)} are ignored.
+     */
+    public synchronized void close() {
+        if (out == null) { return; }
+        try {
+            if (runLength > 0) { writeRun(); }
+            out.writeByte(END_OF_RUNS);
+            out.close();
+            System.out.println("[INPUT RECORDER] Saved " + ticks + " ticks to " + file.getPath());
+        } catch (IOException e) { e.printStackTrace(); }
+        out = null;
+    }
+
+    private void writeRun() throws IOException {
+        out.writeByte(runMask);
+        long value = runLength;
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+        runLength = 0;
+    }
+}
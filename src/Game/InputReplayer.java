@@ -0,0 +1,100 @@
+package Game;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+
+/**
+ * InputReplayer.java <hr>
+ * Reads a recording made by {@link InputRecorder} and returns the movements to apply on each
+ * successive simulation tick.
+ */
+public class InputReplayer {
+
+    private final DataInputStream in;
+    private final String levelName;
+    private final long seed;
+    private int runMask;
+    private long runRemaining;
+    private long ticks;
+    private boolean finished;
+
+    /**
+     * Opens a recording and reads its header.
+     *
+     * @param file the recording to replay
+     */
+    public InputReplayer(File file) throws IOException {
+        in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        if (in.readInt() != InputRecorder.MAGIC) {
+            in.close();
+            throw new IOException("Not an input recording: " + file.getPath());
+        }
+        short version = in.readShort();
+        if (version != InputRecorder.VERSION) {
+            in.close();
+            throw new IOException("Unsupported input recording version: " + version);
+        }
+        levelName = in.readUTF();
+        seed = in.readLong();
+        System.out.println("[INPUT REPLAYER] Replaying '" + levelName + "' from " + file.getPath());
+    }
+
+
+    /* Accessors */
+
+    public String getLevelName() { return levelName; }
+
+    public long getSeed() { return seed; }
+
+    /**
+     * Gets the number of ticks replayed so far.
+     */
+    public long getTicks() { return ticks; }
+
+    public boolean isFinished() { return finished; }
+
+
+    /* Methods */
+
+    /**
+     * Gets the movements to apply on the next tick.
+     *
+     * @return mask of {@link Movement#bit()} values, or -1 once the recording is exhausted
+     */
+    public int nextTick() throws IOException {
+        if (finished) { return -1; }
+        if (runRemaining == 0) {
+            int mask = in.readUnsignedByte();
+            if (mask == InputRecorder.END_OF_RUNS) {
+                finish();
+                return -1;
+            }
+            runMask = mask;
+            runRemaining = readVarLong();
+        }
+        runRemaining--;
+        ticks++;
+        return runMask;
+    }
+
+    private long readVarLong() throws IOException {
+        long value = 0;
+        int shift = 0;
+        int b;
+        do {
+            b = in.readUnsignedByte();
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+
+    private void finish() throws IOException {
+        finished = true;
+        in.close();
+        System.out.println("[INPUT REPLAYER] Replay finished after " + ticks + " ticks");
+    }
+}
@@ -0,0 +1,75 @@
+package Game;
+
+import java.io.File;
+import java.util.ArrayList;
+
+import Tile.CompiledMap;
+import Tile.TMXReader;
+
+/**
+ * MapCompiler.java <hr>
+ * Compiles maps into {@link CompiledMap} files ahead of time, so that not even the first load of
+ * a map has to parse its TMX file. The game compiles a map on its first load anyway; this only
+ * moves that work out of the game. Any existing compiled map is replaced.
+ * <p>
+ * Usage: {@code java Game.MapCompiler [mapName...]}
+ * <br>
+ * Every map in the map folder is compiled if no names are given.
+ */
+public class MapCompiler implements GameContext {
+
+    /* GameContext */
+
+    @Override
+    public int getWidth() { return GamePanel.SCREEN_WIDTH; }
+
+    @Override
+    public int getHeight() { return GamePanel.SCREEN_HEIGHT; }
+
+    @Override
+    public void endGame() {}
+
+    @Override
+    public void endLevel() {}
+
+
+    /* Methods */
+
+    /**
+     * Compiles the specified map.
+     *
+     * @param mapName name of the map
+     */
+    public void compile(String mapName) throws Exception {
+        File compiledFile = new File(TMXReader.MAP_FOLDER + File.separator + mapName,
+            mapName + CompiledMap.EXTENSION);
+        if (compiledFile.exists() && !compiledFile.delete()) {
+            throw new Exception("Could not replace '" + compiledFile + "'");
+        }
+        TMXReader reader = new TMXReader(this, mapName);
+        reader.setUseCompiledMap(true);
+        reader.loadTMXTileMap();
+        if (!compiledFile.exists()) { throw new Exception("Failed to compile '" + mapName + "'"); }
+    }
+
+    public static void main(String[] args) throws Exception {
+        System.setProperty("java.awt.headless", "true");
+        ArrayList<String> mapNames = new ArrayList<>();
+        for (String arg : args) { mapNames.add(arg); }
+        if (mapNames.isEmpty()) {
+            File[] folders = new File(TMXReader.MAP_FOLDER).listFiles(File::isDirectory);
+            if (folders == null) { throw new Exception("No map folder at '" + TMXReader.MAP_FOLDER + "'"); }
+            for (File folder : folders) {
+                if (new File(folder, folder.getName() + ".tmx").isFile()) { mapNames.add(folder.getName()); }
+            }
+        }
+
+        MapCompiler compiler = new MapCompiler();
+        for (String mapName : mapNames) {
+            long start = System.nanoTime();
+            compiler.compile(mapName);
+            System.out.printf("[MAP COMPILER] Compiled '%s' in %.1f ms%n", mapName,
+                (System.nanoTime() - start) / 1e6);
+        }
+    }
+}
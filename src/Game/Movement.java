@@ -6,5 +6,12 @@ public enum Movement {
     JUMP,
     CROUCH,
     STAND,
-    INVALID
+    INVALID;
+
+    /**
+     * Gets the bit representing this movement in a per-tick movement mask.
+     * 
+     * @return bit mask with only this movement's bit set
+     */
+    public int bit() { return 1 << ordinal(); }
 }
@@ -0,0 +1,108 @@
+package Managers;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * AssetLoader.java <hr>
+ * Loads the game's assets on a bounded pool of background threads. The managers split their
+ * loading into independent tasks (one per image or sound file) which are run in parallel by
+ * {@link #runAll(String, List)}, and {@link #loadAll()} starts the managers themselves in parallel
+ * and waits for all of them, so every asset is ready before the first frame is drawn.
+ */
+public class AssetLoader {
+
+    private static final int THREAD_COUNT = Math.max(2, Runtime.getRuntime().availableProcessors());
+    private static ExecutorService pool = null;
+
+    private AssetLoader() {}
+
+
+    /* Methods */
+
+    /**
+     * Loads the save data, images and sounds, with images and sounds loading at the same time,
+     * and prints how long each took.
+     */
+    public static void loadAll() {
+        long start = System.nanoTime();
+        SaveDataManager.getInstance();
+        long saveDataTime = System.nanoTime() - start;
+
+        CompletableFuture<Void> sounds = CompletableFuture.runAsync(SoundManager::getInstance);
+        ImageManager.getInstance();
+        sounds.join();
+
+        System.out.printf("[ASSET LOADER] Save data loaded in %.1f ms%n", saveDataTime / 1e6);
+        System.out.printf("[ASSET LOADER] Startup assets ready in %.1f ms%n",
+            (System.nanoTime() - start) / 1e6);
+    }
+
+    /**
+     * Runs the tasks on the loader pool and waits for all of them to finish. A task that throws
+     * is reported and does not stop the others.
+     *
+     * @param label name of the asset type, used when reporting the timings
+     * @param tasks tasks to run
+     * @return      number of tasks that completed successfully
+     */
+    public static int runAll(String label, List<? extends Callable<?>> tasks) {
+        long start = System.nanoTime();
+        AtomicLong workTime = new AtomicLong();
+        AtomicInteger loaded = new AtomicInteger();
+
+        ArrayList<Future<?>> futures = new ArrayList<>(tasks.size());
+        for (Callable<?> task : tasks) {
+            futures.add(getPool().submit(() -> {
+                long taskStart = System.nanoTime();
+                try {
+                    task.call();
+                    loaded.incrementAndGet();
+                } finally { workTime.addAndGet(System.nanoTime() - taskStart); }
+                return null;
+            }));
+        }
+
+        for (Future<?> future : futures) {
+            try { future.get(); }
+            catch (ExecutionException e) { System.out.println("[ASSET LOADER] " + e.getCause()); }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+
+        System.out.printf("[ASSET LOADER] Loaded %d/%d %s in %.1f ms (%.1f ms of work on %d threads)%n",
+            loaded.get(), tasks.size(), label, (System.nanoTime() - start) / 1e6,
+            workTime.get() / 1e6, THREAD_COUNT);
+        return loaded.get();
+    }
+
+    /**
+     * Runs a task on the loader pool without waiting for it.
+     *
+     * @param task task to run
+     */
+    public static void submit(Runnable task) { getPool().execute(task); }
+
+    private static synchronized ExecutorService getPool() {
+        if (pool == null) {
+            AtomicInteger count = new AtomicInteger();
+            pool = Executors.newFixedThreadPool(THREAD_COUNT, r -> {
+                Thread thread = new Thread(r, "Asset Loader " + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return pool;
+    }
+}
@@ -5,9 +5,8 @@ import java.awt.Graphics2D;
 import java.awt.Image;
 import java.util.ArrayList;
 
-import javax.swing.JPanel;
-
 import Game.Background;
+import Game.GameContext;
 
 
 /**
@@ -23,28 +22,38 @@ import Game.Background;
 public class BackgroundManager {
 
   	private ArrayList<Background> backgrounds;
-    private JPanel panel;
+    private GameContext context;
+    /** Number of times the backgrounds have moved */
+    private int moveCount;
 
-  	public BackgroundManager(JPanel panel) {
+  	public BackgroundManager(GameContext context) {
         backgrounds = new ArrayList<>();
-        this.panel = panel;
+        this.context = context;
   	}
 
     public int getBackgroundCount() { return backgrounds.size(); }
 
+    /**
+     * Gets the number of times the backgrounds have moved, so a renderer can tell whether they
+     * moved since it last drew them.
+     */
+    public int getMoveCount() { return moveCount; }
+
     public void addBackground(Image image, int moveSize) { 
-        backgrounds.add(new Background(panel, image, moveSize));
+        backgrounds.add(new Background(image, moveSize));
 
     }
 
   	public void moveRight() {
         if (backgrounds == null || backgrounds.size() == 0) { return; }
 		for (Background bg: backgrounds) { bg.moveRight(); }
+        moveCount++;
   	}
 
   	public void moveLeft() {
         if (backgrounds == null || backgrounds.size() == 0) { return; }
 		for (Background bg: backgrounds) { bg.moveLeft(); }
+        moveCount++;
   	}
 
   	/**
@@ -55,7 +64,7 @@ public class BackgroundManager {
      */
   	public void draw (Graphics2D g2) {
         g2.setColor(Color.BLACK);
-        g2.fillRect(0, 0, panel.getWidth(), panel.getHeight());
+        g2.fillRect(0, 0, context.getWidth(), context.getHeight());
         if (backgrounds == null || backgrounds.size() == 0) { return; }
 		for (Background bg: backgrounds) { bg.draw(g2); }
   	}
@@ -1,40 +1,68 @@
 package Managers;
 
 import javax.swing.ImageIcon;
+import java.awt.GraphicsConfiguration;
+import java.awt.GraphicsEnvironment;
 import java.awt.Image;
 import java.awt.Toolkit;
+import java.awt.Transparency;
 import java.awt.geom.AffineTransform;
 import java.awt.Graphics2D;
 import javax.imageio.ImageIO;
 
 import java.io.File;
 import java.io.FileNotFoundException;
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
 import java.awt.image.AffineTransformOp;
+import java.awt.image.AreaAveragingScaleFilter;
 import java.awt.image.BufferedImage;
+import java.awt.image.FilteredImageSource;
+import java.awt.image.ImageProducer;
+import java.awt.image.PixelGrabber;
 
 
 /**
  * ImageManager.java <hr>
  * Extended from Game Programming lab content
  * Manages the loading and processing of any image files.
+ * <p>
+ * The default images are decoded in parallel by the {@link AssetLoader}.
+ * <p>
+ * Every image is converted at load time into an image compatible with the screen, with the
+ * narrowest {@link Transparency} its pixels allow, so that Java2D can draw it with its fastest
+ * (and, where available, accelerated) loops. Images needed at another size are scaled once with
+ * {@link #scaleImage(Image, int, int)} instead of on every draw.
+ * <p>
+ * The player's animation frames are packed into a single {@link TextureAtlas} once loaded, and are
+ * drawn through the regions returned by {@link #getRegion(String)}.
  */
 public class ImageManager {
 	private static ImageManager instance = null;
-    private static HashMap<String, Image> imgs = null;
+    private static ConcurrentHashMap<String, Image> imgs = null;
+    private static ConcurrentHashMap<String, TextureAtlas.Region> regions = null;
+    /** Prefix of the names of images packed into the player atlas */
+    private static final String PLAYER_PREFIX = "player_";
     private static final String IMAGE_FOLDER = System.getProperty("user.dir") + 
         File.separator + "assets" +  File.separator + "images";
     private static final String[] validExtensions = new String[] { "jpg", "jpeg", "png", "gif" };
+    /** Configuration of the default screen, or null without a screen */
+    private static final GraphicsConfiguration graphicsConfig = GraphicsEnvironment.isHeadless() ? 
+        null : GraphicsEnvironment.getLocalGraphicsEnvironment().getDefaultScreenDevice().
+        getDefaultConfiguration();
 
     private ImageManager () {
         System.out.println("[IMAGE MANAGER] Initialising");
-        imgs = new HashMap<String, Image>();
+        imgs = new ConcurrentHashMap<String, Image>();
+        regions = new ConcurrentHashMap<String, TextureAtlas.Region>();
     }
     
 
     /* Accessors */
 
-    public static HashMap<String, Image> getImagesHM() { return imgs; }
+    public static ConcurrentHashMap<String, Image> getImagesHM() { return imgs; }
     
     /**
      * Load an image from the "assets/images" folder.
@@ -49,6 +77,14 @@ public class ImageManager {
      */
     public static Image getImage(String name) { return imgs.get(name); }
 
+    /**
+     * Gets the region of an atlas holding an image, for images packed into an atlas.
+     * 
+     * @param name  the name of the image, as for {@link #getImage(String)}
+     * @return      the region if the image was packed, null otherwise
+     */
+    public static TextureAtlas.Region getRegion(String name) { return regions.get(name); }
+
 
     /* Methods */
 
@@ -63,15 +99,37 @@ public class ImageManager {
 
     private static void loadDefaultImages() throws Exception {
         try {
-            loadImagesFromFolder("");
+            ArrayList<Callable<Image>> tasks = new ArrayList<>();
+            loadImagesFromFolder("", tasks);
+            AssetLoader.runAll("images", tasks);
             System.out.println("[IMAGE MANAGER] Finished loading " + imgs.size() + " images");
+            packPlayerImages();
         } catch (Exception e) {
             System.out.println("[ERROR] " + e);
             throw e;
         }
     }
 
-    private static void loadImagesFromFolder(String folderName) throws Exception {
+    /**
+     * Packs the player's images into an atlas, in name order so the layout is the same every run. 
+     * Their entries in the image map are replaced by views of the atlas, so each image is only 
+     * held once.
+     */
+    private static void packPlayerImages() {
+        TextureAtlas atlas = new TextureAtlas("player");
+        for (String name : new TreeSet<>(imgs.keySet())) {
+            if (!name.startsWith(PLAYER_PREFIX)) { continue; }
+            regions.put(name, atlas.add(imgs.get(name)));
+        }
+        for (String name : regions.keySet()) { imgs.put(name, regions.get(name).getImage()); }
+        atlas.printSummary();
+    }
+
+    /**
+     * Walks the folder recursively and adds a task that decodes each image found into the image map.
+     */
+    private static void loadImagesFromFolder(String folderName, ArrayList<Callable<Image>> tasks) 
+        throws Exception {
         System.out.println("[IMAGE MANAGER] Loading folder: " + 
             (folderName.equals("") ? "base" : folderName));
         String path = IMAGE_FOLDER + (folderName.equals("") ? "" : File.separator + folderName);
@@ -86,16 +144,14 @@ public class ImageManager {
         
         for (String fileName : files) {
             if (!fileName.contains(".")) {
-                loadImagesFromFolder(folderName + File.separator + fileName);
+                loadImagesFromFolder(folderName + File.separator + fileName, tasks);
                 continue;
             }
             if (!isExtensionValid(fileName.split("\\.")[1])) continue;
             String key = (folderName + File.separator + fileName.split("\\.")[0]).
                 substring(1).replace(File.separatorChar, '_');
-            imgs.put(
-                key,
-                loadImage(IMAGE_FOLDER + File.separator + folderName + File.separator + fileName)
-            );
+            String imagePath = IMAGE_FOLDER + File.separator + folderName + File.separator + fileName;
+            tasks.add(() -> imgs.put(key, loadImage(imagePath)));
         }
     }
 
@@ -107,10 +163,132 @@ public class ImageManager {
         return false;
     }
 
+	/**
+	 * Decodes an image file into a screen compatible image. ImageIO is used where it can read the 
+	 * file, as it decodes on the calling thread instead of waiting on the shared AWT image loader.
+	 * 
+	 * @param path path to the image file
+	 * @return     the decoded image
+	 */
 	public static Image loadImage (String path) {
-		return new ImageIcon(path).getImage();
+		Image image = null;
+		try { image = ImageIO.read(new File(path)); } 
+		catch (Exception e) {}
+		if (image == null) { image = new ImageIcon(path).getImage(); }
+		if (image.getWidth(null) <= 0 || image.getHeight(null) <= 0) { return image; }
+		return toCompatibleImage(image, image.getWidth(null), image.getHeight(null));
 	}
-    
+
+	/**
+	 * Scales an image to the specified size into a new screen compatible image. The pixels are 
+	 * the same as those of {@code getScaledInstance(width, height, Image.SCALE_SMOOTH)}, but are 
+	 * produced immediately on the calling thread rather than lazily when first drawn.
+	 * 
+	 * @param image  the image to scale, which must be fully loaded
+	 * @param width  the width of the scaled image
+	 * @param height the height of the scaled image
+	 * @return       the scaled image
+	 */
+	public static BufferedImage scaleImage(Image image, int width, int height) {
+		return createImage(scalePixels(image, width, height), width, height);
+	}
+
+	/**
+	 * Scales an image to the specified size like {@link #scaleImage(Image, int, int)}, but returns
+	 * the scaled pixels instead of an image.
+	 *
+	 * @param image  the image to scale, which must be fully loaded
+	 * @param width  the width of the scaled image
+	 * @param height the height of the scaled image
+	 * @return       row-major ARGB pixels of the scaled image
+	 */
+	public static int[] scalePixels(Image image, int width, int height) {
+		ImageProducer producer = new FilteredImageSource(image.getSource(),
+			new AreaAveragingScaleFilter(width, height));
+		int[] pixels = new int[width * height];
+		PixelGrabber grabber = new PixelGrabber(producer, 0, 0, width, height, pixels, 0, width);
+		try {
+			if (!grabber.grabPixels()) {
+				System.out.println("[IMAGE MANAGER] Failed to scale image to " + width + "x" + height);
+			}
+		} catch (InterruptedException e) { Thread.currentThread().interrupt(); }
+		return pixels;
+	}
+
+	/**
+	 * Creates a screen compatible image holding the specified pixels.
+	 *
+	 * @param pixels row-major ARGB pixels
+	 * @param width  the width of the image
+	 * @param height the height of the image
+	 * @return       the new image
+	 */
+	public static BufferedImage createImage(int[] pixels, int width, int height) {
+		BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+		image.setRGB(0, 0, width, height, pixels, 0, width);
+		return toCompatibleImage(image, width, height);
+	}
+
+	/**
+	 * Creates an empty image compatible with the screen. Without a screen (e.g. headless), an 
+	 * integer RGB image is used for opaque images and a premultiplied ARGB image otherwise.
+	 * 
+	 * @param width        the width of the image
+	 * @param height       the height of the image
+	 * @param transparency one of the {@link Transparency} modes
+	 * @return             the new image
+	 */
+	public static BufferedImage createCompatibleImage(int width, int height, int transparency) {
+		if (graphicsConfig != null) { 
+			return graphicsConfig.createCompatibleImage(width, height, transparency); 
+		}
+		return new BufferedImage(width, height, (transparency == Transparency.OPAQUE) ? 
+			BufferedImage.TYPE_INT_RGB : BufferedImage.TYPE_INT_ARGB_PRE);
+	}
+
+	/**
+	 * Copies an image into a screen compatible image with the narrowest transparency mode its 
+	 * alpha values allow, unless it already is one.
+	 */
+	private static BufferedImage toCompatibleImage(Image image, int width, int height) {
+		BufferedImage source;
+		if (image instanceof BufferedImage) { source = (BufferedImage) image; }
+		else {
+			source = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+			Graphics2D g2d = source.createGraphics();
+			g2d.drawImage(image, 0, 0, null);
+			g2d.dispose();
+		}
+
+		// A 1x1 image tells the layout compatible images of this transparency use
+		int transparency = getTransparency(source);
+		BufferedImage probe = createCompatibleImage(1, 1, transparency);
+		if (probe.getType() == source.getType() && 
+			probe.getColorModel().equals(source.getColorModel())) { return source; }
+
+		BufferedImage compatible = createCompatibleImage(width, height, transparency);
+		Graphics2D g2d = compatible.createGraphics();
+		g2d.drawImage(source, 0, 0, null);
+		g2d.dispose();
+		return compatible;
+	}
+
+	/**
+	 * Gets the narrowest transparency mode that represents every pixel of an image exactly.
+	 */
+	private static int getTransparency(BufferedImage image) {
+		if (image.getTransparency() == Transparency.OPAQUE) { return Transparency.OPAQUE; }
+		int[] pixels = image.getRGB(0, 0, image.getWidth(), image.getHeight(), null, 0, 
+			image.getWidth());
+		int transparency = Transparency.OPAQUE;
+		for (int pixel : pixels) {
+			int alpha = pixel >>> 24;
+			if (alpha == 0) { transparency = Transparency.BITMASK; }
+			else if (alpha != 255) { return Transparency.TRANSLUCENT; }
+		}
+		return transparency;
+	}
+
     public static ImageIcon loadImageIcon (String path) {
         return new ImageIcon(path);
     }
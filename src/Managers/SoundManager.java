@@ -1,7 +1,10 @@
 package Managers;
 
 import java.io.*;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
 import javax.sound.sampled.*;
 import javax.sound.sampled.FloatControl.Type;
 
@@ -11,11 +14,13 @@ import Game.DataKey;
 /**
  * SoundManager.java <hr>
  * Extended from Game Programming lab content
+ * <p>
+ * The default clips are opened in parallel by the {@link AssetLoader}.
  */
 public class SoundManager {
 	private static SoundManager instance = null;
-	private static HashMap<String, Clip> sfx = null;
-	private static HashMap<String, Clip> music = null;
+	private static ConcurrentHashMap<String, Clip> sfx = null;
+	private static ConcurrentHashMap<String, Clip> music = null;
     private static HashMap<DataKey, Float> volume = null;
     private static String currentMusic = null;
     private static final String SOUND_FOLDER = System.getProperty("user.dir") + 
@@ -23,8 +28,8 @@ public class SoundManager {
 
 	private SoundManager () {
         System.out.println("[SOUND MANAGER] Initialising");
-		sfx = new HashMap<String, Clip>();
-		music = new HashMap<String, Clip>();
+		sfx = new ConcurrentHashMap<String, Clip>();
+		music = new ConcurrentHashMap<String, Clip>();
         volume = new HashMap<DataKey, Float>();
         volume.put(DataKey.MUSIC, SaveDataManager.get(DataKey.MUSIC));
         volume.put(DataKey.SFX, SaveDataManager.get(DataKey.SFX));
@@ -34,6 +39,7 @@ public class SoundManager {
     /* Accessors */
 
     private static Clip getClip(DataKey key, String title) {
+        if (title == null) return null;
         if (key == DataKey.MUSIC) return music.get(title);
         if (key == DataKey.SFX)   return sfx.get(title);
         System.out.println("[SOUND MANAGER] No such clip: " + title);
@@ -79,26 +85,31 @@ public class SoundManager {
         if (!sfxFolder.exists()) throw new FileNotFoundException("SFX folder does not exist");
         if (sfxFolder.list().length == 0) throw new FileNotFoundException("SFX folder is empty");
         
-        // Load all audio files into HashMap
-        for (String fileName : musicFolder.list()) {
-            loadClip(DataKey.MUSIC, fileName);
-            music.put(
-                fileName.split("\\.")[0].toLowerCase(), 
-                getClip(DataKey.MUSIC, fileName)
-            );
-        }
-        for (String fileName : sfxFolder.list()) {
-            loadClip(DataKey.SFX, fileName);
-            sfx.put(
-                fileName.split("\\.")[0].toLowerCase(),
-                getClip(DataKey.SFX, fileName)
-            );
-        }
+        // Open all audio files in parallel and add them to their map
+        ArrayList<Callable<Clip>> tasks = new ArrayList<>();
+        for (String fileName : musicFolder.list()) { tasks.add(() -> putClip(DataKey.MUSIC, fileName)); }
+        for (String fileName : sfxFolder.list()) { tasks.add(() -> putClip(DataKey.SFX, fileName)); }
+        AssetLoader.runAll("sounds", tasks);
+    }
+
+    /**
+     * Opens a clip and adds it to the map for its type.
+     *
+     * @return the clip added
+     * @throws IOException if the clip could not be opened
+     */
+    private static Clip putClip(DataKey key, String fileName) throws IOException {
+        Clip clip = loadClip(key, fileName);
+        if (clip == null) { throw new IOException("Could not open clip: " + fileName); }
+        String title = fileName.split("\\.")[0].toLowerCase();
+        if (key == DataKey.MUSIC) { music.put(title, clip); }
+        else { sfx.put(title, clip); }
+        return clip;
     }
 
-    private static void loadClip (DataKey key, String fileName) {
+    private static Clip loadClip (DataKey key, String fileName) {
+        Clip clip = null;
         try {
-            Clip clip = null;
             String folder = key == DataKey.MUSIC ? "music" : "sfx";
             File file = new File(SOUND_FOLDER + File.separator + folder + File.separator + fileName);
             AudioInputStream audioIn = AudioSystem.getAudioInputStream(file.toURI().toURL());
@@ -107,7 +118,9 @@ public class SoundManager {
 		}
 		catch (Exception e) {
  			System.out.println ("[SOUND MANAGER] " + e);
+			clip = null;
 		}
+        return clip;
     }
 
     public static void playMusicClip(String title, boolean loop) {
@@ -184,7 +197,7 @@ public class SoundManager {
         // Set gain control
         switch (key) {
             case MUSIC:
-                Clip clip = music.get(currentMusic);
+                Clip clip = getClip(DataKey.MUSIC, currentMusic);
                 if (clip != null) {
                     FloatControl gainControl = (FloatControl) clip.getControl(Type.MASTER_GAIN);
                     gainControl.setValue(20f * (float) Math.log10(volume));
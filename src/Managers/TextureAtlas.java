@@ -0,0 +1,196 @@
+package Managers;
+
+import java.awt.AlphaComposite;
+import java.awt.Graphics2D;
+import java.awt.Image;
+import java.awt.Transparency;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+
+/**
+ * TextureAtlas.java <hr>
+ * Packs many small images into a few large sheets, so that they can be drawn from a handful of
+ * images instead of one image object each. Images are added one at a time and placed on shelves:
+ * rows of images filled left to right, with a new shelf started below the tallest image of the
+ * previous one once a row is full.
+ * <p>
+ * Opaque, bitmask and translucent images are packed onto separate sheets of their own
+ * {@link Transparency} mode, so packing does not slow down drawing opaque images. Sheets start as
+ * tall as their first shelf and grow as shelves are added, up to {@link #SHEET_SIZE} pixels, after
+ * which a new sheet is started. An image larger than a sheet gets a sheet of its own.
+ * <p>
+ * Each added image is drawn through its {@link Region}, which stays valid as its sheet grows.
+ */
+public class TextureAtlas {
+
+    /** Width and maximum height of a sheet in pixels */
+    public static final int SHEET_SIZE = 1024;
+
+    private final String name;
+    private final ArrayList<Sheet> sheets;
+    private int imageCount;
+
+    /**
+     * Creates an empty atlas.
+     *
+     * @param name name of the atlas, used when logging
+     */
+    public TextureAtlas(String name) {
+        this.name = name;
+        this.sheets = new ArrayList<>();
+    }
+
+
+    /* Accessors */
+
+    public String getName() { return name; }
+
+    public int getSheetCount() { return sheets.size(); }
+
+    public int getImageCount() { return imageCount; }
+
+
+    /* Methods */
+
+    /**
+     * Copies an image into the atlas.
+     *
+     * @param image the image to add, which must be fully loaded
+     * @return      the region of the atlas holding the image
+     */
+    public synchronized Region add(Image image) {
+        int width = image.getWidth(null);
+        int height = image.getHeight(null);
+        int transparency = (image instanceof BufferedImage) ?
+            ((BufferedImage) image).getTransparency() : Transparency.TRANSLUCENT;
+
+        Sheet sheet = null;
+        for (Sheet s : sheets) {
+            if (s.transparency == transparency && s.fits(width, height)) { sheet = s; }
+        }
+        if (sheet == null) {
+            sheet = new Sheet(Math.max(SHEET_SIZE, width), Math.max(SHEET_SIZE, height), transparency);
+            sheets.add(sheet);
+        }
+
+        imageCount++;
+        return sheet.place(image, width, height);
+    }
+
+    /**
+     * Prints how many images the atlas holds and how full its sheets are.
+     */
+    public synchronized void printSummary() {
+        long used = 0, allocated = 0;
+        for (Sheet sheet : sheets) {
+            used += sheet.usedPixels;
+            allocated += (long) sheet.image.getWidth() * sheet.image.getHeight();
+        }
+        System.out.printf("[TEXTURE ATLAS] Packed %d images of '%s' into %d sheets (%.0f%% used)%n",
+            imageCount, name, sheets.size(), (allocated == 0) ? 0 : 100.0 * used / allocated);
+    }
+
+
+    /**
+     * A sheet of the atlas, filled shelf by shelf.
+     */
+    private static class Sheet {
+
+        final int maxWidth;
+        final int maxHeight;
+        final int transparency;
+        BufferedImage image;
+        int shelfX, shelfY, shelfHeight;
+        long usedPixels;
+
+        Sheet(int maxWidth, int maxHeight, int transparency) {
+            this.maxWidth = maxWidth;
+            this.maxHeight = maxHeight;
+            this.transparency = transparency;
+        }
+
+        boolean fits(int width, int height) {
+            return fitsOnShelf(width, height) || 
+                (width <= maxWidth && shelfY + shelfHeight + height <= maxHeight);
+        }
+
+        boolean fitsOnShelf(int width, int height) {
+            return shelfX + width <= maxWidth && shelfY + Math.max(shelfHeight, height) <= maxHeight;
+        }
+
+        Region place(Image source, int width, int height) {
+            if (!fitsOnShelf(width, height)) {
+                shelfY += shelfHeight;
+                shelfX = shelfHeight = 0;
+            }
+            int x = shelfX;
+            int y = shelfY;
+            shelfX += width;
+            shelfHeight = Math.max(shelfHeight, height);
+            grow(shelfY + shelfHeight);
+
+            Graphics2D g2d = image.createGraphics();
+            g2d.setComposite(AlphaComposite.Src);
+            g2d.drawImage(source, x, y, null);
+            g2d.dispose();
+            usedPixels += (long) width * height;
+            return new Region(this, x, y, width, height);
+        }
+
+        /**
+         * Makes the sheet at least the specified height, doubling it to keep copies rare.
+         */
+        private void grow(int height) {
+            if (image != null && image.getHeight() >= height) { return; }
+            int newHeight = (image == null) ? height : Math.min(maxHeight,
+                Math.max(height, image.getHeight() * 2));
+            BufferedImage grown = ImageManager.createCompatibleImage(maxWidth, newHeight, transparency);
+            if (image != null) {
+                Graphics2D g2d = grown.createGraphics();
+                g2d.setComposite(AlphaComposite.Src);
+                g2d.drawImage(image, 0, 0, null);
+                g2d.dispose();
+                image.flush();
+            }
+            image = grown;
+        }
+    }
+
+
+    /**
+     * The part of a sheet holding one image of the atlas.
+     */
+    public static final class Region {
+
+        private final Sheet sheet;
+        private final int x, y, width, height;
+
+        private Region(Sheet sheet, int x, int y, int width, int height) {
+            this.sheet = sheet;
+            this.x = x;
+            this.y = y;
+            this.width = width;
+            this.height = height;
+        }
+
+        public int getWidth() { return width; }
+
+        public int getHeight() { return height; }
+
+        /**
+         * Gets the region as an image of its own. The image shares its pixels with the sheet, so
+         * it is only valid until the sheet next grows; use it once the atlas is fully packed.
+         */
+        public BufferedImage getImage() { return sheet.image.getSubimage(x, y, width, height); }
+
+        /**
+         * Draws the region with its top left corner at the specified position.
+         *
+         * @return false if the sheet is still being produced and was not fully drawn
+         */
+        public boolean draw(Graphics2D g2d, int dx, int dy) {
+            return g2d.drawImage(sheet.image, dx, dy, dx + width, dy + height,
+                x, y, x + width, y + height, null);
+        }
+    }
+}
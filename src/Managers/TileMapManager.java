@@ -1,35 +1,132 @@
 package Managers;
 
-import Game.GamePanel;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import Game.GameContext;
 import Tile.*;
 
 /**
  * TileMapManager.java <hr>
  * Extended from Game Programming lab content
  * Manages tile Images and "hosts" the Sprites used in the game.
+ * <p>
+ * Tile maps can be loaded on a background thread ahead of time with {@link #preloadTileMap(String)}
+ * so that switching levels does not stall the game loop. Only one map is preloaded at a time.
+ * <p>
+ * Maps are loaded from their {@link CompiledMap} when it is up to date with the map's files, and
+ * compiled on their first load otherwise.
  */
 public class TileMapManager {
 
-    private TMXReader tmxReader;
+    private final GameContext context;
+    private final ExecutorService loader;
+    private String preloadName;
+    private Future<TileMap> preload;
+    private volatile TMXReader preloadReader;
 
-    public TileMapManager(GamePanel panel) {
+    public TileMapManager(GameContext context) {
         System.out.println("[TILEMAP MANAGER] Initialising");
-        this.tmxReader = new TMXReader(panel);
+        this.context = context;
+        this.loader = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "TileMap Loader");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+    }
+
+
+    /* Accessors */
+
+    /**
+     * Gets how far the map currently being preloaded has got.
+     *
+     * @return progress of the preload [0, 1], or 0 if nothing is being preloaded
+     */
+    public double getLoadProgress() {
+        TMXReader reader = preloadReader;
+        return (reader == null) ? 0 : reader.getProgress();
     }
 
 
     /* Methods */
 
+    /**
+     * Starts loading the specified tile map on the background loader thread. Does nothing if that
+     * map is already being preloaded; any other pending preload is discarded.
+     *
+     * @param name name of the map to load
+     */
+    public synchronized void preloadTileMap(String name) {
+        if (name.equals(preloadName)) { return; }
+        if (preload != null) { preload.cancel(false); }
+
+        System.out.println("[TILEMAP MANAGER] Preloading '" + name + "' in the background");
+        TMXReader reader = new TMXReader(context, name);
+        reader.setUseCompiledMap(true);
+        preloadName = name;
+        preloadReader = reader;
+        preload = loader.submit(() -> {
+            long start = System.nanoTime();
+            reader.loadTMXTileMap();
+            System.out.printf("[TILEMAP MANAGER] Preloaded '%s' in %.1f ms%n", name,
+                (System.nanoTime() - start) / 1e6);
+            return reader.getTileMap();
+        });
+    }
 
+    /**
+     * Takes the specified tile map if it has finished preloading, waiting at most the given time
+     * for it. A preload of the map is started if one is not already running. Once taken, the map
+     * is no longer held by the manager.
+     *
+     * @param name      name of the map
+     * @param timeoutNs maximum time to wait in nanoseconds
+     * @return          the loaded map, or null if it is not ready yet
+     * @throws Exception if the map failed to load
+     */
+    public synchronized TileMap pollTileMap(String name, long timeoutNs) throws Exception {
+        preloadTileMap(name);
+        try {
+            TileMap map = preload.get(timeoutNs, TimeUnit.NANOSECONDS);
+            clearPreload();
+            return map;
+
+        } catch (TimeoutException e) {
+            return null;
+
+        } catch (ExecutionException e) {
+            clearPreload();
+            throw (e.getCause() instanceof Exception) ? (Exception) e.getCause() : e;
+        }
+    }
+
+    /**
+     * Loads the specified tile map, blocking until it is ready. A finished or running preload of
+     * the map is used if there is one.
+     *
+     * @param name name of the map
+     * @return     the loaded map, or null if it failed to load
+     */
     public TileMap loadTileMap(String name) {
         TileMap map = null;
-        try { 
-            tmxReader.loadTMXTileMap(name);
-            map = tmxReader.getTileMap();
+        try {
+            map = pollTileMap(name, Long.MAX_VALUE);
 
         } catch (Exception e) { e.printStackTrace(); }
 
         return map;
     }
 
+    private void clearPreload() {
+        preload = null;
+        preloadName = null;
+        preloadReader = null;
+    }
+
 }
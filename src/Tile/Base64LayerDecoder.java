@@ -0,0 +1,182 @@
+package Tile;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Base64;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Base64LayerDecoder.java <hr>
+ * Decodes the base64 encoded {@code <data>} of a TMX layer, optionally compressed with zlib or
+ * gzip, into an array of GIDs. The characters of the element are read from the XML stream
+ * reader's buffer through a chain of streams (base64, then {@link InflaterInputStream} or
+ * {@link GZIPInputStream}), so the layer is never held as one String or byte array. Each GID is
+ * stored as a little-endian 32-bit integer, and the layer data must hold exactly one per cell.
+ */
+public class Base64LayerDecoder {
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private Base64LayerDecoder() {}
+
+
+    /* Methods */
+
+    /**
+     * Decodes the {@code <data>} element the reader is at, leaving the reader at its end.
+     *
+     * @param reader      reader positioned at the start of the {@code <data>} element
+     * @param compression value of the element's {@code compression} attribute, or null
+     * @param layerName   name of the layer, used in error messages
+     * @param gids        row-major array to write the GIDs into, one element per cell
+     */
+    public static void decode(XMLStreamReader reader, String compression, String layerName, int[] gids)
+        throws XMLStreamException {
+        boolean compressed = compression != null && !compression.isEmpty();
+        if (compressed && !compression.equals("zlib") && !compression.equals("gzip")) {
+            throw new XMLStreamException("Unsupported compression '" + compression + "' in layer '" + 
+                layerName + "'");
+        }
+
+        boolean exact;
+        try (InputStream text = Base64.getMimeDecoder().wrap(new TextInputStream(reader))) {
+            if (!compressed) { exact = readGids(text, gids); }
+            else if (compression.equals("zlib")) {
+                // Closing an inflater stream only releases inflaters it created itself
+                Inflater inflater = new Inflater();
+                try { exact = readGids(new InflaterInputStream(text, inflater, BUFFER_SIZE), gids); } 
+                finally { inflater.end(); }
+            } else {
+                try (InputStream in = new GZIPInputStream(text, BUFFER_SIZE)) { exact = readGids(in, gids); }
+            }
+        } catch (EOFException e) {
+            throw new XMLStreamException("Layer '" + layerName + "' has fewer than " + gids.length + " tiles");
+        } catch (IOException e) {
+            if (e.getCause() instanceof XMLStreamException) { throw (XMLStreamException) e.getCause(); }
+            throw new XMLStreamException("Invalid data in layer '" + layerName + "': " + e.getMessage());
+        }
+        if (!exact) {
+            throw new XMLStreamException("Layer '" + layerName + "' has more than " + gids.length + " tiles");
+        }
+    }
+
+    /**
+     * Reads the base64 encoded text of the element the reader is at into bytes, without 
+     * decompressing them, leaving the reader at its end.
+     *
+     * @param reader    reader positioned at the start of the element
+     * @param layerName name of the layer, used in error messages
+     * @return          the decoded bytes
+     */
+    public static byte[] readBytes(XMLStreamReader reader, String layerName) throws XMLStreamException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (InputStream in = Base64.getMimeDecoder().wrap(new TextInputStream(reader))) {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            for (int read; (read = in.read(buffer)) >= 0; ) { bytes.write(buffer, 0, read); }
+        } catch (IOException e) {
+            if (e.getCause() instanceof XMLStreamException) { throw (XMLStreamException) e.getCause(); }
+            throw new XMLStreamException("Invalid data in layer '" + layerName + "': " + e.getMessage());
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Reads little-endian GIDs until the array is full.
+     *
+     * @return true if the data ends after the last GID, false if more follows
+     */
+    static boolean readGids(InputStream in, int[] gids) throws IOException {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        int count = 0, filled = 0;
+        while (count < gids.length) {
+            int read = in.read(buffer, filled, buffer.length - filled);
+            if (read < 0) { throw new EOFException(); }
+            filled += read;
+
+            int end = Math.min(filled & ~3, (gids.length - count) * 4);
+            for (int i = 0; i < end; i += 4) {
+                gids[count++] = (buffer[i] & 0xFF) | (buffer[i + 1] & 0xFF) << 8 |
+                    (buffer[i + 2] & 0xFF) << 16 | (buffer[i + 3] & 0xFF) << 24;
+            }
+
+            // Keep the bytes of a GID split between reads for the next read
+            System.arraycopy(buffer, end, buffer, 0, filled - end);
+            filled -= end;
+        }
+        return filled == 0 && in.read() < 0;
+    }
+
+
+    /**
+     * The text of an element as a stream of bytes, read one text event at a time straight from the
+     * reader's character buffer. Ends at the end of the element, which the reader is left at.
+     */
+    private static class TextInputStream extends InputStream {
+
+        private final XMLStreamReader reader;
+        private char[] chars;
+        private int position, end;
+        private boolean finished;
+
+        TextInputStream(XMLStreamReader reader) { this.reader = reader; }
+
+        @Override
+        public int read() throws IOException {
+            if (!fill()) { return -1; }
+            return toByte(chars[position++]);
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) { return 0; }
+            if (!fill()) { return -1; }
+            int count = Math.min(len, end - position);
+            for (int i = 0; i < count; i++) { b[off + i] = (byte) toByte(chars[position++]); }
+            return count;
+        }
+
+        @Override
+        public void close() throws IOException {
+            // Skip whatever the decoders did not read, so the reader ends up at the end of the element
+            while (fill()) { position = end; }
+        }
+
+        /**
+         * Moves to the next text event if the current one has been read.
+         *
+         * @return false once the end of the element is reached
+         */
+        private boolean fill() throws IOException {
+            try {
+                while (position == end) {
+                    if (finished) { return false; }
+                    int event = reader.next();
+                    if (event == XMLStreamConstants.END_ELEMENT) {
+                        finished = true;
+                        return false;
+                    }
+                    if (event == XMLStreamConstants.CHARACTERS || event == XMLStreamConstants.CDATA ||
+                        event == XMLStreamConstants.SPACE) {
+                        chars = reader.getTextCharacters();
+                        position = reader.getTextStart();
+                        end = position + reader.getTextLength();
+                    }
+                }
+                return true;
+            } catch (XMLStreamException e) { throw new IOException(e.getMessage(), e); }
+        }
+
+        private int toByte(char c) throws IOException {
+            if (c > 0x7F) { throw new IOException("unexpected character '" + c + "'"); }
+            return c;
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package Tile;
+
+/**
+ * CSVLayerDecoder.java <hr>
+ * Decodes the CSV encoded {@code <data>} of a TMX layer into an array of GIDs as its characters are
+ * read, without creating a String per row or value. The characters may arrive in any number of
+ * pieces split at any point, as they do from an XML stream reader, so a value cut in two is
+ * carried over to the next piece.
+ * <p>
+ * Values are separated by commas, and the whitespace between rows is skipped. The layer data must
+ * hold exactly one value per cell of the layer.
+ */
+public class CSVLayerDecoder {
+
+    /** Largest GID a TMX file can hold, including the flip flags in its highest bits */
+    private static final long MAX_GID = 0xFFFFFFFFL;
+
+    private final String layerName;
+    private final int[] gids;
+    private int count;
+    private long value;
+    private boolean inValue;
+
+    /**
+     * Creates a decoder for the data of a layer.
+     *
+     * @param layerName name of the layer, used in error messages
+     * @param gids      row-major array to write the GIDs into, one element per cell
+     */
+    public CSVLayerDecoder(String layerName, int[] gids) {
+        this.layerName = layerName;
+        this.gids = gids;
+    }
+
+
+    /* Accessors */
+
+    /**
+     * Gets the number of values decoded so far.
+     */
+    public int getCount() { return count; }
+
+
+    /* Methods */
+
+    /**
+     * Decodes the next piece of the layer data.
+     *
+     * @param chars  buffer holding the characters
+     * @param start  index of the first character to decode
+     * @param length number of characters to decode
+     */
+    public void decode(char[] chars, int start, int length) {
+        for (int i = start, end = start + length; i < end; i++) {
+            char c = chars[i];
+            if (c >= '0' && c <= '9') {
+                value = value * 10 + (c - '0');
+                if (value > MAX_GID) {
+                    throw new IllegalArgumentException("GID out of range in layer '" + layerName + "'");
+                }
+                inValue = true;
+            } else if (c == ',' || Character.isWhitespace(c)) { endValue(); }
+            else {
+                throw new IllegalArgumentException("Unexpected character '" + c +
+                    "' in CSV data of layer '" + layerName + "'");
+            }
+        }
+    }
+
+    /**
+     * Decodes the last value of the layer data, and checks every cell was given a value.
+     */
+    public void finish() {
+        endValue();
+        if (count != gids.length) {
+            throw new IllegalArgumentException("Layer '" + layerName + "' has " + count +
+                " tiles, expected " + gids.length);
+        }
+    }
+
+    private void endValue() {
+        if (!inValue) { return; }
+        if (count == gids.length) {
+            throw new IllegalArgumentException("Layer '" + layerName + "' has more than " +
+                gids.length + " tiles");
+        }
+        gids[count++] = (int) value;
+        value = 0;
+        inValue = false;
+    }
+}
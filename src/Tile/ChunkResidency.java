@@ -0,0 +1,277 @@
+package Tile;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import Managers.AssetLoader;
+
+/**
+ * ChunkResidency.java <hr>
+ * Decides which chunks of the {@link ChunkedTileLayer}s of an infinite map are held decoded in
+ * memory. Each frame the tile map reports the cells on screen: chunks on screen are kept, chunks
+ * within {@link #PREFETCH_MARGIN} chunks of the screen are decoded on the asset loader pool before
+ * they scroll into view, and once the decoded chunks exceed the memory budget the least recently
+ * used ones are released (compressing them again first if they were changed). A chunk that is read
+ * before it has been decoded, e.g. by a collision query, is decoded on the spot.
+ * <p>
+ * A {@link Listener} is told when a chunk is released, so data derived from its cells (such as the
+ * tile map's {@link ChunkedCellFlags}) can be dropped along with it.
+ * <p>
+ * Apart from the background decoding, every method must be called by the thread that owns the
+ * tile map. Decoded chunks are handed back through a queue and only installed by
+ * {@link #update(int, int, int, int)}, so layers are never changed by another thread.
+ */
+public class ChunkResidency {
+
+    /** Default memory budget for decoded chunks in bytes */
+    public static final long DEFAULT_BUDGET_BYTES = 64L << 20;
+    /** Number of chunks around the screen that are decoded ahead of time */
+    public static final int PREFETCH_MARGIN = 1;
+    private static final int NONE = -1;
+
+    private final long budgetBytes;
+    private final ArrayList<ChunkedTileLayer> layers;
+    /** Least recently used list of resident chunks, linked through their slots */
+    private int[] prev, next;
+    private int head, tail;
+    /** Frame each chunk was last on screen */
+    private long[] visibleFrame;
+    /** True while a chunk is being decoded in the background */
+    private boolean[] queued;
+    private int slotCount;
+    private final ConcurrentLinkedQueue<Decoded> decoded;
+    private Listener listener;
+    private long usedBytes;
+    private int residentCount;
+    private long frame;
+
+    /**
+     * Creates a residency with the default memory budget.
+     */
+    public ChunkResidency() { this(DEFAULT_BUDGET_BYTES); }
+
+    /**
+     * Creates a residency.
+     *
+     * @param budgetBytes memory budget for decoded chunks in bytes. Chunks on screen are kept
+     *                    even if they do not fit.
+     */
+    public ChunkResidency(long budgetBytes) {
+        this.budgetBytes = budgetBytes;
+        layers = new ArrayList<>();
+        prev = next = new int[0];
+        visibleFrame = new long[0];
+        queued = new boolean[0];
+        head = tail = NONE;
+        decoded = new ConcurrentLinkedQueue<>();
+        frame = 1;
+    }
+
+
+    /* Accessors */
+
+    public long getBudgetBytes() { return budgetBytes; }
+
+    /**
+     * Gets the memory held by decoded chunks in bytes.
+     */
+    public long getUsedBytes() { return usedBytes; }
+
+    /**
+     * Gets the number of decoded chunks across every layer.
+     */
+    public int getResidentCount() { return residentCount; }
+
+
+    /* Mutators */
+
+    /**
+     * Sets the listener told when a chunk is released, replacing any previous listener.
+     *
+     * @param listener the listener, or null for none
+     */
+    public void setListener(Listener listener) { this.listener = listener; }
+
+
+    /* Methods */
+
+    /**
+     * Adds a layer's chunks to the residency. Called by the layer when it is created.
+     *
+     * @return slot of the layer's first chunk
+     */
+    int register(ChunkedTileLayer layer) {
+        int base = slotCount;
+        layers.add(layer);
+        slotCount += layer.getChunkCount();
+        prev = Arrays.copyOf(prev, slotCount);
+        next = Arrays.copyOf(next, slotCount);
+        visibleFrame = Arrays.copyOf(visibleFrame, slotCount);
+        queued = Arrays.copyOf(queued, slotCount);
+        return base;
+    }
+
+    /**
+     * Decodes a chunk immediately and makes it resident.
+     *
+     * @return the decoded cells of the chunk
+     */
+    int[] load(ChunkedTileLayer layer, int chunk) {
+        return install(layer, chunk, layer.decode(layer.getEncoded(chunk)));
+    }
+
+    /**
+     * Makes a chunk resident with the specified cells, releasing other chunks if over budget.
+     *
+     * @return the cells
+     */
+    int[] install(ChunkedTileLayer layer, int chunk, int[] cells) {
+        int slot = layer.getSlotBase() + chunk;
+        layer.setResident(chunk, cells);
+        linkFirst(slot);
+        usedBytes += layer.getChunkBytes();
+        residentCount++;
+        evict(slot);
+        return cells;
+    }
+
+    /**
+     * Called once a frame with the cells on screen. Installs the chunks decoded in the background
+     * since the last frame, marks the chunks on screen as used, starts decoding the chunks around
+     * the screen, and releases chunks while over budget.
+     *
+     * @param firstCol first column on screen
+     * @param firstRow first row on screen
+     * @param lastCol  last column on screen
+     * @param lastRow  last row on screen
+     */
+    public void update(int firstCol, int firstRow, int lastCol, int lastRow) {
+        frame++;
+        for (Decoded d; (d = decoded.poll()) != null; ) {
+            queued[d.layer.getSlotBase() + d.chunk] = false;
+            if (d.cells == null || d.layer.isResident(d.chunk)) { continue; }
+            if (d.layer.getVersion(d.chunk) != d.version) { continue; }
+            install(d.layer, d.chunk, d.cells);
+        }
+
+        for (ChunkedTileLayer layer : layers) {
+            int size = layer.getChunkSize();
+            int chunksX = layer.getChunksX();
+            int chunksY = layer.getChunkCount() / chunksX;
+            int firstX = Math.max(0, firstCol / size - PREFETCH_MARGIN);
+            int lastX = Math.min(chunksX - 1, lastCol / size + PREFETCH_MARGIN);
+            int firstY = Math.max(0, firstRow / size - PREFETCH_MARGIN);
+            int lastY = Math.min(chunksY - 1, lastRow / size + PREFETCH_MARGIN);
+            for (int cy = firstY; cy <= lastY; cy++) {
+                for (int cx = firstX; cx <= lastX; cx++) {
+                    int chunk = cy * chunksX + cx;
+                    int slot = layer.getSlotBase() + chunk;
+                    boolean visible = cx * size <= lastCol && (cx + 1) * size > firstCol &&
+                        cy * size <= lastRow && (cy + 1) * size > firstRow;
+                    if (layer.isResident(chunk)) {
+                        if (visible) {
+                            visibleFrame[slot] = frame;
+                            unlink(slot);
+                            linkFirst(slot);
+                        }
+                    } else if (!visible && !layer.isEmpty(chunk) && !queued[slot]) { 
+                        // Chunks on screen are decoded when drawn, if their cells are needed
+                        prefetch(layer, chunk); 
+                    }
+                }
+            }
+        }
+        evict(NONE);
+    }
+
+    /**
+     * Decodes a chunk on the loader pool. The result is installed by the next update, unless the
+     * chunk was loaded or changed in the meantime.
+     */
+    private void prefetch(ChunkedTileLayer layer, int chunk) {
+        queued[layer.getSlotBase() + chunk] = true;
+        byte[] data = layer.getEncoded(chunk);
+        int version = layer.getVersion(chunk);
+        AssetLoader.submit(() -> {
+            int[] cells = null;
+            try { cells = layer.decode(data); }
+            catch (RuntimeException e) { System.out.println("[CHUNK RESIDENCY] " + e); }
+            decoded.add(new Decoded(layer, chunk, version, cells));
+        });
+    }
+
+    /**
+     * Releases the least recently used chunks until the decoded chunks fit the budget, keeping
+     * the chunks on screen and the specified slot.
+     */
+    private void evict(int keep) {
+        while (usedBytes > budgetBytes && tail != NONE) {
+            int slot = tail;
+            if (slot == keep || visibleFrame[slot] == frame) { return; }
+            ChunkedTileLayer layer = getLayer(slot);
+            unlink(slot);
+            layer.release(slot - layer.getSlotBase());
+            usedBytes -= layer.getChunkBytes();
+            residentCount--;
+            if (listener != null) { listener.chunkReleased(layer, slot - layer.getSlotBase()); }
+        }
+    }
+
+    private ChunkedTileLayer getLayer(int slot) {
+        for (int i = layers.size() - 1; i >= 0; i--) {
+            ChunkedTileLayer layer = layers.get(i);
+            if (slot >= layer.getSlotBase()) { return layer; }
+        }
+        throw new IllegalArgumentException("No chunk in slot " + slot);
+    }
+
+    private void linkFirst(int slot) {
+        prev[slot] = NONE;
+        next[slot] = head;
+        if (head != NONE) { prev[head] = slot; }
+        head = slot;
+        if (tail == NONE) { tail = slot; }
+    }
+
+    private void unlink(int slot) {
+        if (prev[slot] != NONE) { next[prev[slot]] = next[slot]; }
+        else { head = next[slot]; }
+        if (next[slot] != NONE) { prev[next[slot]] = prev[slot]; }
+        else { tail = prev[slot]; }
+    }
+
+
+    /**
+     * Told when a decoded chunk is released.
+     */
+    public interface Listener {
+
+        /**
+         * Called after a chunk's decoded cells were dropped.
+         *
+         * @param layer the layer of the chunk
+         * @param chunk index of the chunk
+         */
+        void chunkReleased(ChunkedTileLayer layer, int chunk);
+    }
+
+
+    /**
+     * A chunk decoded in the background, waiting to be installed.
+     */
+    private static class Decoded {
+
+        final ChunkedTileLayer layer;
+        final int chunk;
+        final int version;
+        final int[] cells;
+
+        Decoded(ChunkedTileLayer layer, int chunk, int version, int[] cells) {
+            this.layer = layer;
+            this.chunk = chunk;
+            this.version = version;
+            this.cells = cells;
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package Tile;
+
+import java.util.Arrays;
+
+/**
+ * ChunkedCellFlags.java <hr>
+ * The combined {@link TileProperty} flags of the cells of an infinite map, held per chunk of its
+ * {@link ChunkedTileLayer}s instead of in one array for the whole world. The tile map builds a
+ * chunk's flags from its collidable layers when a cell of the chunk is first queried, and drops
+ * them again once one of the chunks they were built from is released by the
+ * {@link ChunkResidency}, so flags are only held for the part of the world that is decoded.
+ * Chunks without any tile on a collidable layer share one array of zeros.
+ */
+public class ChunkedCellFlags {
+
+    private final int chunkSize;
+    private final int chunksX;
+    /** Flags of the cells of each chunk in row-major order, or null until built */
+    private final int[][] flags;
+    private final int[] empty;
+
+    /**
+     * Creates flags with no chunk built.
+     *
+     * @param width     width of the map in tiles, a multiple of the chunk size
+     * @param height    height of the map in tiles, a multiple of the chunk size
+     * @param chunkSize width and height of a chunk in tiles
+     */
+    public ChunkedCellFlags(int width, int height, int chunkSize) {
+        this.chunkSize = chunkSize;
+        chunksX = width / chunkSize;
+        flags = new int[chunksX * (height / chunkSize)][];
+        empty = new int[chunkSize * chunkSize];
+    }
+
+
+    /* Accessors */
+
+    public int getChunkSize() { return chunkSize; }
+
+    /**
+     * Gets the index of the chunk containing the specified cell.
+     */
+    public int getChunk(int col, int row) { return (row / chunkSize) * chunksX + col / chunkSize; }
+
+    public boolean isBuilt(int chunk) { return flags[chunk] != null; }
+
+    /**
+     * Gets the flags of a cell, whose chunk must have been built.
+     */
+    public int get(int col, int row) {
+        return flags[getChunk(col, row)][(row % chunkSize) * chunkSize + col % chunkSize];
+    }
+
+
+    /* Mutators */
+
+    /**
+     * Sets the flags of a cell, whose chunk must have been built.
+     */
+    public void set(int col, int row, int value) {
+        int chunk = getChunk(col, row);
+        if (flags[chunk] == empty) {
+            if (value == 0) { return; }
+            flags[chunk] = new int[empty.length];
+        }
+        flags[chunk][(row % chunkSize) * chunkSize + col % chunkSize] = value;
+    }
+
+    /**
+     * Sets the flags of every cell of a chunk.
+     *
+     * @param chunk index of the chunk
+     * @param cells flags of the chunk's cells in row-major order, or null if they are all 0
+     */
+    void build(int chunk, int[] cells) { flags[chunk] = (cells == null) ? empty : cells; }
+
+    /**
+     * Drops the flags of a chunk, to be built again when next queried.
+     */
+    void release(int chunk) { flags[chunk] = null; }
+
+    /**
+     * Drops the flags of every chunk.
+     */
+    void clear() { Arrays.fill(flags, null); }
+}
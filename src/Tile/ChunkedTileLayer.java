@@ -0,0 +1,250 @@
+package Tile;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * ChunkedTileLayer.java <hr>
+ * A tile layer of an infinite TMX map, stored as square chunks of cells instead of one array for
+ * the whole layer. Every chunk is kept compressed (zlib, or gzip if the map used it), and is only
+ * decoded while its {@link ChunkResidency} holds it in memory; the residency decides which chunks
+ * stay decoded and loads the others in the background or, at the latest, when a cell of the chunk
+ * is first read. Chunks that were never written are empty and take no memory.
+ * <p>
+ * Cells are only read and written by the thread that owns the tile map (the loader thread while
+ * the map loads, then the game thread).
+ */
+public class ChunkedTileLayer extends TileLayer {
+
+    private static final int BYTES_PER_CELL = 4;
+
+    private final ChunkResidency residency;
+    private final int slotBase;
+    private final int chunkSize;
+    private final int chunksX;
+    private final boolean gzip;
+    /** Decoded cells of each resident chunk, null if the chunk is not resident */
+    private final int[][] cells;
+    /** Compressed cells of each chunk, null if the chunk is empty */
+    private final byte[][] encoded;
+    /** True if a resident chunk was changed since it was last compressed */
+    private final boolean[] dirty;
+    /** Incremented whenever a chunk's compressed cells are replaced */
+    private final int[] versions;
+
+    /**
+     * Creates a layer with only empty chunks.
+     *
+     * @param name      name of the layer
+     * @param width     width of the layer in tiles, a multiple of the chunk size
+     * @param height    height of the layer in tiles, a multiple of the chunk size
+     * @param tileTable tiles indexed by GID; index 0 is unused
+     * @param flags     bitmask of {@link LayerProperty} flags
+     * @param chunkSize width and height of a chunk in tiles
+     * @param gzip      true to compress chunks with gzip rather than zlib
+     * @param residency residency managing the decoded chunks of every layer of the map
+     */
+    public ChunkedTileLayer(String name, int width, int height, Tile[] tileTable, int flags,
+        int chunkSize, boolean gzip, ChunkResidency residency) {
+        super(name, width, height, tileTable, flags, null);
+        this.chunkSize = chunkSize;
+        this.chunksX = width / chunkSize;
+        this.gzip = gzip;
+        this.residency = residency;
+        int chunkCount = chunksX * (height / chunkSize);
+        cells = new int[chunkCount][];
+        encoded = new byte[chunkCount][];
+        dirty = new boolean[chunkCount];
+        versions = new int[chunkCount];
+        slotBase = residency.register(this);
+    }
+
+
+    /* Accessors */
+
+    public int getChunkSize() { return chunkSize; }
+
+    public int getChunkCount() { return cells.length; }
+
+    public ChunkResidency getResidency() { return residency; }
+
+    @Override
+    public Tile getTile(int x, int y) { return getTileTable()[getGid(x, y)]; }
+
+    @Override
+    public int getGid(int x, int y) {
+        int chunk = (y / chunkSize) * chunksX + x / chunkSize;
+        int[] gids = cells[chunk];
+        if (gids == null) {
+            if (encoded[chunk] == null) { return 0; }
+            gids = residency.load(this, chunk);
+        }
+        return gids[(y % chunkSize) * chunkSize + x % chunkSize];
+    }
+
+    /**
+     * Gets the cells of a chunk, decoding it and making it resident if it is not.
+     *
+     * @return the cells in row-major order, or null if the chunk is empty
+     */
+    int[] getCells(int chunk) {
+        if (cells[chunk] != null || encoded[chunk] == null) { return cells[chunk]; }
+        return residency.load(this, chunk);
+    }
+
+    /**
+     * Gets the cells of a chunk without making it resident, decoding a copy if it is not.
+     *
+     * @return the cells in row-major order, or null if the chunk is empty
+     */
+    int[] peekCells(int chunk) {
+        if (cells[chunk] != null || encoded[chunk] == null) { return cells[chunk]; }
+        return decode(encoded[chunk]);
+    }
+
+    int getSlotBase() { return slotBase; }
+
+    int getChunksX() { return chunksX; }
+
+    boolean isResident(int chunk) { return cells[chunk] != null; }
+
+    boolean isEmpty(int chunk) { return cells[chunk] == null && encoded[chunk] == null; }
+
+    byte[] getEncoded(int chunk) { return encoded[chunk]; }
+
+    int getVersion(int chunk) { return versions[chunk]; }
+
+    /**
+     * Gets the memory taken by a decoded chunk in bytes.
+     */
+    long getChunkBytes() { return (long) chunkSize * chunkSize * BYTES_PER_CELL; }
+
+
+    /* Mutators */
+
+    @Override
+    public void setGid(int x, int y, int gid) {
+        int chunk = (y / chunkSize) * chunksX + x / chunkSize;
+        int[] gids = cells[chunk];
+        if (gids == null) {
+            gids = (encoded[chunk] == null) ?
+                residency.install(this, chunk, new int[chunkSize * chunkSize]) :
+                residency.load(this, chunk);
+        }
+        gids[(y % chunkSize) * chunkSize + x % chunkSize] = gid;
+        dirty[chunk] = true;
+    }
+
+    /**
+     * Sets the compressed cells of a chunk.
+     *
+     * @param chunk index of the chunk
+     * @param data  little-endian GIDs compressed the way the layer compresses chunks
+     */
+    void setEncoded(int chunk, byte[] data) {
+        encoded[chunk] = data;
+        versions[chunk]++;
+    }
+
+    /**
+     * Sets the compressed cells of the chunk at the specified position, as read from the map file.
+     *
+     * @param cx   column of the chunk
+     * @param cy   row of the chunk
+     * @param data little-endian GIDs compressed the way the layer compresses chunks
+     */
+    void setEncoded(int cx, int cy, byte[] data) { setEncoded(cy * chunksX + cx, data); }
+
+    void setResident(int chunk, int[] gids) { cells[chunk] = gids; }
+
+    /**
+     * Drops the decoded cells of a chunk, compressing them first if they were changed.
+     */
+    void release(int chunk) {
+        if (dirty[chunk]) {
+            setEncoded(chunk, encode(cells[chunk], gzip));
+            dirty[chunk] = false;
+        }
+        cells[chunk] = null;
+    }
+
+
+    /* Methods */
+
+    /**
+     * Decodes compressed chunk cells and checks every GID is a tile of the layer. Safe to call
+     * from any thread.
+     *
+     * @param data compressed cells of the chunk
+     * @return     the decoded cells
+     * @throws IllegalArgumentException if the data is not a valid chunk of the layer
+     */
+    int[] decode(byte[] data) {
+        int[] gids = new int[chunkSize * chunkSize];
+        boolean exact;
+        try {
+            if (gzip) {
+                try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(data))) {
+                    exact = Base64LayerDecoder.readGids(in, gids);
+                }
+            } else {
+                Inflater inflater = new Inflater();
+                try {
+                    exact = Base64LayerDecoder.readGids(
+                        new InflaterInputStream(new ByteArrayInputStream(data), inflater), gids);
+                } finally { inflater.end(); }
+            }
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Invalid chunk in layer '" + getName() + "': " + e);
+        }
+        if (!exact) {
+            throw new IllegalArgumentException("Chunk of layer '" + getName() + "' has more than " +
+                gids.length + " tiles");
+        }
+
+        Tile[] table = getTileTable();
+        for (int gid : gids) {
+            if (gid != 0 && (gid < 0 || gid >= table.length || table[gid] == null)) {
+                throw new IllegalArgumentException("Unknown tile " + Integer.toUnsignedString(gid) +
+                    " in layer '" + getName() + "'");
+            }
+        }
+        return gids;
+    }
+
+    /**
+     * Compresses chunk cells as little-endian GIDs.
+     *
+     * @param gids cells of the chunk
+     * @param gzip true to compress with gzip rather than zlib
+     * @return     the compressed cells
+     */
+    static byte[] encode(int[] gids, boolean gzip) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try (OutputStream out = gzip ? new GZIPOutputStream(bytes) :
+            new DeflaterOutputStream(bytes, deflater)) {
+            byte[] buffer = new byte[gids.length * BYTES_PER_CELL];
+            for (int i = 0; i < gids.length; i++) {
+                int gid = gids[i];
+                buffer[i * 4] = (byte) gid;
+                buffer[i * 4 + 1] = (byte) (gid >>> 8);
+                buffer[i * 4 + 2] = (byte) (gid >>> 16);
+                buffer[i * 4 + 3] = (byte) (gid >>> 24);
+            }
+            out.write(buffer);
+        } catch (IOException e) { throw new UncheckedIOException(e); }
+        finally { deflater.end(); }
+        return bytes.toByteArray();
+    }
+}
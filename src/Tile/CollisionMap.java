@@ -0,0 +1,72 @@
+package Tile;
+
+/**
+ * CollisionMap.java <hr>
+ * Packed bitmap of the solid cells of a tile map, one bit per cell in row-major order. It is built
+ * once when the map is loaded and updated cell by cell when tiles change, so collision queries
+ * are a bounds check and a bit test and never allocate.
+ */
+public class CollisionMap {
+
+    private final long[] bits;
+    private final int width;
+    private final int height;
+
+    /**
+     * Creates a bitmap with no solid cells.
+     * 
+     * @param width  width of the map in tiles
+     * @param height height of the map in tiles
+     */
+    public CollisionMap(int width, int height) {
+        this.width = width;
+        this.height = height;
+        bits = new long[(width * height + 63) >>> 6];
+    }
+
+
+    /* Accessors */
+
+    public int getWidth() { return width; }
+
+    public int getHeight() { return height; }
+
+    /**
+     * Checks if the specified cell is solid.
+     * 
+     * @param col column of the cell
+     * @param row row of the cell
+     * @return    {@code true} if the cell is solid, {@code false} if it is not or is out of bounds
+     */
+    public boolean isSolid(int col, int row) {
+        if (col < 0 || col >= width || row < 0 || row >= height) { return false; }
+        int index = row * width + col;
+        return (bits[index >>> 6] & (1L << index)) != 0;
+    }
+
+    /**
+     * Counts the solid cells.
+     */
+    public int getSolidCount() {
+        int count = 0;
+        for (long word : bits) { count += Long.bitCount(word); }
+        return count;
+    }
+
+
+    /* Mutators */
+
+    /**
+     * Marks the specified cell as solid or not solid. Out of bounds cells are ignored.
+     * 
+     * @param col   column of the cell
+     * @param row   row of the cell
+     * @param solid whether the cell is solid
+     */
+    public void setSolid(int col, int row, boolean solid) {
+        if (col < 0 || col >= width || row < 0 || row >= height) { return; }
+        int index = row * width + col;
+        if (solid) { bits[index >>> 6] |= 1L << index; }
+        else { bits[index >>> 6] &= ~(1L << index); }
+    }
+}
@@ -0,0 +1,368 @@
+package Tile;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.zip.CRC32;
+
+import Game.GamePanel;
+
+/**
+ * CompiledMap.java <hr>
+ * A tile map as built by the {@link TMXReader}, stored in a binary file next to the TMX file so
+ * the map can be loaded again without parsing any XML or decoding and scaling any tile images.
+ * The file holds the tiles of every tileset (already scaled to the tile size), the cells of every
+ * layer with the flags its properties resolved to, and the cells that spawn entities. It is read
+ * through a {@link MappedByteBuffer}, so loading it comes down to bulk copies out of the page cache.
+ * The pixels of tiles with the same image are written once, and shared again when read.
+ * <p>
+ * The files the map was built from (the TMX file, its TSX files and the tile images) are listed
+ * with their length, modification time and CRC-32. The compiled map is only used while every one
+ * of them still matches: a file whose modification time changed but whose contents did not (e.g.
+ * after a fresh checkout) is still accepted.
+ * <p>
+ * File layout (big-endian). Strings are an unsigned short length followed by UTF-8 bytes.
+ * <pre>
+ *     int    magic        'TMXC'
+ *     short  version
+ *     int    tile size    size in pixels the tile images were scaled to
+ *     int    sources      then per source: string path (relative to the map folder),
+ *                         long length, long last modified, int CRC-32
+ *     int    width        width of the map in tiles
+ *     int    height       height of the map in tiles
+ *     int    chunk size   width and height of the chunks of an infinite map, or 0
+ *     int    tiles        then per tile: int GID, string name, int flags, and either
+ *                         int index of an earlier tile with the same pixels or
+ *                         int -1, int[tile size * tile size] ARGB pixels
+ *     int    layers       then per layer: string name, int layer flags, int tile flags set,
+ *                         int tile flags cleared, byte kind, and either
+ *                         int[width * height] GIDs (CELLS) or
+ *                         int count, then per chunk: int index, int length, compressed cells
+ *                         (ZLIB_CHUNKS, GZIP_CHUNKS)
+ *     int    spawns       then per spawn: int layer index, int cell index
+ * </pre>
+ */
+public class CompiledMap {
+
+    public static final int MAGIC = 0x544D5843;
+    public static final short VERSION = 3;
+    public static final String EXTENSION = ".tmxc";
+    public static final byte CELLS = 0;
+    public static final byte ZLIB_CHUNKS = 1;
+    public static final byte GZIP_CHUNKS = 2;
+
+    private final LinkedHashSet<String> sources;
+    private final ArrayList<TileData> tiles;
+    private final ArrayList<LayerData> layers;
+    private int width, height, chunkSize;
+    private int[] spawns;
+
+    public CompiledMap() {
+        sources = new LinkedHashSet<>();
+        tiles = new ArrayList<>();
+        layers = new ArrayList<>();
+        spawns = new int[0];
+    }
+
+
+    /* Accessors */
+
+    public int getWidth() { return width; }
+
+    public int getHeight() { return height; }
+
+    public int getChunkSize() { return chunkSize; }
+
+    ArrayList<TileData> getTiles() { return tiles; }
+
+    ArrayList<LayerData> getLayers() { return layers; }
+
+    /**
+     * Gets the layer and cell index of every cell that spawns an entity.
+     *
+     * @see TileMap#getSpawns()
+     */
+    int[] getSpawns() { return spawns; }
+
+
+    /* Mutators */
+
+    /**
+     * Sets the size of the map.
+     *
+     * @param width     width of the map in tiles
+     * @param height    height of the map in tiles
+     * @param chunkSize width and height of the chunks of an infinite map, or 0
+     */
+    void setSize(int width, int height, int chunkSize) {
+        this.width = width;
+        this.height = height;
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Adds a file the map was built from. Adding the same file again has no effect.
+     *
+     * @param path path of the file relative to the map folder
+     */
+    void addSource(String path) { sources.add(path); }
+
+    /**
+     * Adds a tile. Tiles with the same pixels should be given the same array, whose pixels are
+     * then only written once.
+     */
+    void addTile(int gid, String name, int flags, int[] pixels) {
+        tiles.add(new TileData(gid, name, flags, pixels));
+    }
+
+    void addLayer(LayerData layer) { layers.add(layer); }
+
+    void setSpawns(int[] spawns) { this.spawns = spawns; }
+
+
+    /* Methods */
+
+    /**
+     * Reads a compiled map, provided it is up to date with the files it was built from.
+     *
+     * @param file       the compiled map
+     * @param folderPath folder the paths of the source files are relative to
+     * @return           the compiled map, or null if the file does not exist, is out of date or
+     *                   cannot be read
+     */
+    public static CompiledMap read(File file, String folderPath) {
+        if (!file.isFile()) { return null; }
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt() != MAGIC || buffer.getShort() != VERSION ||
+                buffer.getInt() != GamePanel.TILE_SIZE) {
+                System.out.println("[COMPILED MAP] " + file.getName() + " was compiled by another version");
+                return null;
+            }
+
+            CompiledMap map = new CompiledMap();
+            for (int i = buffer.getInt(); i > 0; i--) {
+                String path = getString(buffer);
+                if (!isUnchanged(new File(folderPath, path), buffer.getLong(), buffer.getLong(),
+                    buffer.getInt())) {
+                    System.out.println("[COMPILED MAP] " + file.getName() + " is out of date: '" +
+                        path + "' has changed");
+                    return null;
+                }
+                map.addSource(path);
+            }
+
+            map.setSize(buffer.getInt(), buffer.getInt(), buffer.getInt());
+            for (int i = buffer.getInt(); i > 0; i--) {
+                int gid = buffer.getInt();
+                String name = getString(buffer);
+                int flags = buffer.getInt();
+                int shared = buffer.getInt();
+                if (shared < -1 || shared >= map.tiles.size()) {
+                    throw new IOException("Unknown tile " + shared);
+                }
+                map.addTile(gid, name, flags, (shared >= 0) ? map.tiles.get(shared).pixels
+                    : getInts(buffer, GamePanel.TILE_SIZE * GamePanel.TILE_SIZE));
+            }
+            for (int i = buffer.getInt(); i > 0; i--) {
+                LayerData layer = new LayerData(getString(buffer), buffer.getInt(), buffer.getInt(),
+                    buffer.getInt());
+                byte kind = buffer.get();
+                if (kind == CELLS) { layer.gids = getInts(buffer, map.width * map.height); }
+                else if (kind == ZLIB_CHUNKS || kind == GZIP_CHUNKS) {
+                    layer.gzip = (kind == GZIP_CHUNKS);
+                    int count = buffer.getInt();
+                    if (count < 0 || count > buffer.remaining() / (2 * Integer.BYTES)) {
+                        throw new BufferUnderflowException();
+                    }
+                    layer.chunkIndices = new int[count];
+                    layer.chunks = new byte[count][];
+                    for (int c = 0; c < layer.chunks.length; c++) {
+                        layer.chunkIndices[c] = buffer.getInt();
+                        layer.chunks[c] = getBytes(buffer, buffer.getInt());
+                    }
+                } else { throw new IOException("Unknown layer kind " + kind); }
+                map.addLayer(layer);
+            }
+            map.setSpawns(getInts(buffer, buffer.getInt() * 2));
+            if (buffer.hasRemaining()) { throw new IOException("Unexpected data at the end"); }
+            return map;
+
+        } catch (IOException | RuntimeException e) {
+            System.out.println("[COMPILED MAP] Could not read " + file.getName() + ": " + e);
+            return null;
+        }
+    }
+
+    /**
+     * Writes the compiled map, replacing any existing file only once it has been written in full.
+     *
+     * @param file       the file to write
+     * @param folderPath folder the paths of the source files are relative to
+     */
+    public void write(File file, String folderPath) throws IOException {
+        File temp = new File(file.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(
+            new BufferedOutputStream(new FileOutputStream(temp)))) {
+            out.writeInt(MAGIC);
+            out.writeShort(VERSION);
+            out.writeInt(GamePanel.TILE_SIZE);
+
+            out.writeInt(sources.size());
+            for (String path : sources) {
+                File source = new File(folderPath, path);
+                writeString(out, path);
+                out.writeLong(source.length());
+                out.writeLong(source.lastModified());
+                out.writeInt(getCRC(source));
+            }
+
+            out.writeInt(width);
+            out.writeInt(height);
+            out.writeInt(chunkSize);
+            out.writeInt(tiles.size());
+            IdentityHashMap<int[], Integer> written = new IdentityHashMap<>();
+            for (int i = 0; i < tiles.size(); i++) {
+                TileData tile = tiles.get(i);
+                out.writeInt(tile.gid);
+                writeString(out, tile.name);
+                out.writeInt(tile.flags);
+                Integer shared = written.putIfAbsent(tile.pixels, i);
+                out.writeInt((shared == null) ? -1 : shared);
+                if (shared == null) { writeInts(out, tile.pixels); }
+            }
+
+            out.writeInt(layers.size());
+            for (LayerData layer : layers) {
+                writeString(out, layer.name);
+                out.writeInt(layer.flags);
+                out.writeInt(layer.setFlags);
+                out.writeInt(layer.clearFlags);
+                if (layer.gids != null) {
+                    out.writeByte(CELLS);
+                    writeInts(out, layer.gids);
+                    continue;
+                }
+                out.writeByte(layer.gzip ? GZIP_CHUNKS : ZLIB_CHUNKS);
+                out.writeInt(layer.chunks.length);
+                for (int c = 0; c < layer.chunks.length; c++) {
+                    out.writeInt(layer.chunkIndices[c]);
+                    out.writeInt(layer.chunks[c].length);
+                    out.write(layer.chunks[c]);
+                }
+            }
+
+            out.writeInt(spawns.length / 2);
+            writeInts(out, spawns);
+        }
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Checks a source file still matches the length, modification time and CRC-32 recorded for
+     * it. The contents are only compared if the modification time differs.
+     */
+    private static boolean isUnchanged(File file, long length, long lastModified, int crc)
+        throws IOException {
+        if (!file.isFile() || file.length() != length) { return false; }
+        return file.lastModified() == lastModified || getCRC(file) == crc;
+    }
+
+    private static int getCRC(File file) throws IOException {
+        CRC32 crc = new CRC32();
+        try (InputStream in = new FileInputStream(file)) {
+            byte[] buffer = new byte[8192];
+            for (int read; (read = in.read(buffer)) >= 0; ) { crc.update(buffer, 0, read); }
+        }
+        return (int) crc.getValue();
+    }
+
+    private static String getString(MappedByteBuffer buffer) {
+        return new String(getBytes(buffer, Short.toUnsignedInt(buffer.getShort())), StandardCharsets.UTF_8);
+    }
+
+    private static byte[] getBytes(MappedByteBuffer buffer, int count) {
+        if (count < 0 || count > buffer.remaining()) { throw new BufferUnderflowException(); }
+        byte[] values = new byte[count];
+        buffer.get(values);
+        return values;
+    }
+
+    /**
+     * Copies the next ints of the buffer into a new array, moving the buffer past them.
+     */
+    private static int[] getInts(MappedByteBuffer buffer, int count) {
+        if (count < 0 || count > buffer.remaining() / Integer.BYTES) { throw new BufferUnderflowException(); }
+        int[] values = new int[count];
+        buffer.asIntBuffer().get(values);
+        buffer.position(buffer.position() + count * Integer.BYTES);
+        return values;
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > 0xFFFF) { throw new IOException("String too long: '" + value + "'"); }
+        out.writeShort(bytes.length);
+        out.write(bytes);
+    }
+
+    private static void writeInts(DataOutputStream out, int[] values) throws IOException {
+        for (int value : values) { out.writeInt(value); }
+    }
+
+
+    /**
+     * A tile of a tileset, with its image scaled to the tile size.
+     */
+    static class TileData {
+
+        final int gid;
+        final String name;
+        final int flags;
+        final int[] pixels;
+
+        TileData(int gid, String name, int flags, int[] pixels) {
+            this.gid = gid;
+            this.name = name;
+            this.flags = flags;
+            this.pixels = pixels;
+        }
+    }
+
+    /**
+     * A layer, holding either its cells or, for an infinite map, its compressed chunks.
+     */
+    static class LayerData {
+
+        final String name;
+        /** {@link LayerProperty} flags of the layer */
+        final int flags;
+        /** {@link TileProperty} flags the layer's properties set and clear on its tiles */
+        final int setFlags, clearFlags;
+        int[] gids;
+        boolean gzip;
+        int[] chunkIndices;
+        byte[][] chunks;
+
+        LayerData(String name, int flags, int setFlags, int clearFlags) {
+            this.name = name;
+            this.flags = flags;
+            this.setFlags = setFlags;
+            this.clearFlags = clearFlags;
+        }
+    }
+}
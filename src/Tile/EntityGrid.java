@@ -0,0 +1,249 @@
+package Tile;
+
+import java.util.Arrays;
+
+import Game.GamePanel;
+
+/**
+ * EntityGrid.java <hr>
+ * Uniform grid over the cells of a tile map that finds the entities whose bounding rectangles may
+ * overlap a rectangle without testing every entity. Each entity is listed in every cell its
+ * bounding rectangle covers; entities outside the map are listed in the nearest edge cells.
+ * <p>
+ * Entities are identified by dense integer IDs chosen by the caller, and queries return the IDs
+ * of the candidates in ascending order, so callers that assign IDs in spawn order visit entities
+ * in the same order as a scan of the whole list would. Queries never allocate once the grid has
+ * grown to fit the entities.
+ */
+public class EntityGrid {
+
+    private static final int INITIAL_CELL_CAPACITY = 4;
+    /** Most results sorted by insertion, above which they are sorted through {@link #idBits} */
+    private static final int INSERTION_SORT_LIMIT = 16;
+
+    private final int width;
+    private final int height;
+    /** IDs of the entities listed in each cell, in no particular order */
+    private final int[][] cells;
+    private final int[] cellCounts;
+    /** First column, first row, last column and last row covered by each ID, or -1 if not listed */
+    private int[] ranges;
+    /** Query on which each ID was last found, so entities covering several cells are found once */
+    private int[] marks;
+    private int query;
+    private int[] results;
+    /** One bit per ID, all clear between queries */
+    private long[] idBits;
+
+    /**
+     * Creates an empty grid.
+     *
+     * @param width  width of the map in tiles
+     * @param height height of the map in tiles
+     */
+    public EntityGrid(int width, int height) {
+        this.width = Math.max(1, width);
+        this.height = Math.max(1, height);
+        cells = new int[this.width * this.height][];
+        cellCounts = new int[cells.length];
+        ranges = new int[0];
+        marks = new int[0];
+        results = new int[16];
+        idBits = new long[0];
+    }
+
+
+    /* Accessors */
+
+    /**
+     * Gets the IDs found by the last query, in ascending order. Only the number of elements
+     * returned by the query are valid.
+     */
+    public int[] getResults() { return results; }
+
+    /**
+     * Checks if the entity with the specified ID is listed in the grid.
+     */
+    public boolean contains(int id) { return id * 4 < ranges.length && ranges[id * 4] >= 0; }
+
+
+    /* Mutators */
+
+    /**
+     * Lists an entity in the cells its bounding rectangle covers. An entity already listed with
+     * the ID is moved.
+     *
+     * @param id ID of the entity
+     * @param x  x-coordinate of the entity's bounding rectangle in pixels
+     * @param y  y-coordinate of the entity's bounding rectangle in pixels
+     * @param w  width of the entity's bounding rectangle in pixels
+     * @param h  height of the entity's bounding rectangle in pixels
+     */
+    public void add(int id, int x, int y, int w, int h) {
+        if (id * 4 >= ranges.length) {
+            int capacity = Math.max(id + 1, ranges.length / 2);
+            int oldLength = ranges.length;
+            ranges = Arrays.copyOf(ranges, capacity * 4);
+            Arrays.fill(ranges, oldLength, ranges.length, -1);
+            marks = Arrays.copyOf(marks, capacity);
+            idBits = Arrays.copyOf(idBits, (capacity + 63) >>> 6);
+        }
+        if (ranges[id * 4] >= 0) { remove(id); }
+
+        int firstCol = toCol(x);
+        int firstRow = toRow(y);
+        int lastCol = toCol(x + w - 1);
+        int lastRow = toRow(y + h - 1);
+        ranges[id * 4] = firstCol;
+        ranges[id * 4 + 1] = firstRow;
+        ranges[id * 4 + 2] = lastCol;
+        ranges[id * 4 + 3] = lastRow;
+        for (int row = firstRow; row <= lastRow; row++) {
+            for (int col = firstCol; col <= lastCol; col++) { addToCell(row * width + col, id); }
+        }
+    }
+
+    /**
+     * Moves an entity to the cells its new bounding rectangle covers. Cheap if it stays within
+     * the same cells.
+     *
+     * @param id ID of the entity
+     * @param x  new x-coordinate of the entity's bounding rectangle in pixels
+     * @param y  new y-coordinate of the entity's bounding rectangle in pixels
+     * @param w  new width of the entity's bounding rectangle in pixels
+     * @param h  new height of the entity's bounding rectangle in pixels
+     */
+    public void move(int id, int x, int y, int w, int h) {
+        if (contains(id) && ranges[id * 4] == toCol(x) && ranges[id * 4 + 1] == toRow(y) &&
+            ranges[id * 4 + 2] == toCol(x + w - 1) && ranges[id * 4 + 3] == toRow(y + h - 1)) {
+            return;
+        }
+        add(id, x, y, w, h);
+    }
+
+    /**
+     * Removes an entity from the grid. Does nothing if it is not listed.
+     *
+     * @param id ID of the entity
+     */
+    public void remove(int id) {
+        if (!contains(id)) { return; }
+        for (int row = ranges[id * 4 + 1]; row <= ranges[id * 4 + 3]; row++) {
+            for (int col = ranges[id * 4]; col <= ranges[id * 4 + 2]; col++) {
+                removeFromCell(row * width + col, id);
+            }
+        }
+        ranges[id * 4] = -1;
+    }
+
+    /**
+     * Removes every entity.
+     */
+    public void clear() {
+        Arrays.fill(cellCounts, 0);
+        Arrays.fill(ranges, -1);
+    }
+
+
+    /* Methods */
+
+    /**
+     * Finds the entities listed in the cells a rectangle covers. These include every entity whose
+     * bounding rectangle intersects the rectangle, and may include others nearby.
+     *
+     * @param x x-coordinate of the rectangle in pixels
+     * @param y y-coordinate of the rectangle in pixels
+     * @param w width of the rectangle in pixels
+     * @param h height of the rectangle in pixels
+     * @return  number of IDs found, which are in {@link #getResults()} in ascending order
+     */
+    public int query(int x, int y, int w, int h) {
+        if (++query == 0) {
+            Arrays.fill(marks, 0);
+            query = 1;
+        }
+        int firstCol = toCol(x);
+        int firstRow = toRow(y);
+        int lastCol = toCol(x + w - 1);
+        int lastRow = toRow(y + h - 1);
+
+        int count = 0;
+        for (int row = firstRow; row <= lastRow; row++) {
+            for (int col = firstCol; col <= lastCol; col++) {
+                int cell = row * width + col;
+                for (int i = 0; i < cellCounts[cell]; i++) {
+                    int id = cells[cell][i];
+                    if (marks[id] == query) { continue; }
+                    marks[id] = query;
+                    if (count == results.length) { results = Arrays.copyOf(results, count * 2); }
+                    results[count++] = id;
+                }
+            }
+        }
+
+        sortResults(count);
+        return count;
+    }
+
+    /**
+     * Sorts the first IDs of the results. A few IDs, as found around an entity, are sorted by
+     * insertion. More, as found across the whole screen, are set in a bitset that is then walked
+     * in ID order, which takes linear time and does not allocate.
+     */
+    private void sortResults(int count) {
+        if (count <= INSERTION_SORT_LIMIT) {
+            for (int i = 1; i < count; i++) {
+                int id = results[i];
+                int j = i - 1;
+                for (; j >= 0 && results[j] > id; j--) { results[j + 1] = results[j]; }
+                results[j + 1] = id;
+            }
+            return;
+        }
+
+        int firstWord = Integer.MAX_VALUE;
+        int lastWord = 0;
+        for (int i = 0; i < count; i++) {
+            int word = results[i] >>> 6;
+            idBits[word] |= 1L << results[i];
+            firstWord = Math.min(firstWord, word);
+            lastWord = Math.max(lastWord, word);
+        }
+        int n = 0;
+        for (int word = firstWord; word <= lastWord; word++) {
+            long bits = idBits[word];
+            idBits[word] = 0L;
+            while (bits != 0L) {
+                results[n++] = (word << 6) + Long.numberOfTrailingZeros(bits);
+                bits &= bits - 1;
+            }
+        }
+    }
+
+    /** Column of the cell containing an x-coordinate in pixels, clamped to the grid */
+    private int toCol(int x) {
+        return Math.max(0, Math.min(width - 1, Math.floorDiv(x, GamePanel.TILE_SIZE)));
+    }
+
+    /** Row of the cell containing a y-coordinate in pixels, clamped to the grid */
+    private int toRow(int y) {
+        return Math.max(0, Math.min(height - 1, Math.floorDiv(y, GamePanel.TILE_SIZE)));
+    }
+
+    private void addToCell(int cell, int id) {
+        if (cells[cell] == null) { cells[cell] = new int[INITIAL_CELL_CAPACITY]; }
+        else if (cellCounts[cell] == cells[cell].length) {
+            cells[cell] = Arrays.copyOf(cells[cell], cells[cell].length * 2);
+        }
+        cells[cell][cellCounts[cell]++] = id;
+    }
+
+    private void removeFromCell(int cell, int id) {
+        int[] ids = cells[cell];
+        for (int i = 0; i < cellCounts[cell]; i++) {
+            if (ids[i] != id) { continue; }
+            ids[i] = ids[--cellCounts[cell]];
+            return;
+        }
+    }
+}
@@ -0,0 +1,361 @@
+package Tile;
+
+import java.awt.geom.Rectangle2D;
+import java.util.Arrays;
+
+import Entity.*;
+
+/**
+ * EntityStore.java <hr>
+ * The entities of a tile map, with the state read on every tick (bounding rectangle, kind, flags,
+ * layer and visibility) kept in parallel primitive arrays, so that updating, collision checks and
+ * culling run as loops over arrays instead of calls on each entity object. The entity objects are
+ * kept alongside for the behaviour particular to each kind, such as being collected or drawn.
+ * <p>
+ * Entities are packed into slots {@code [0, size)}. Removing an entity moves the last entity into
+ * its slot, so slots change; each entity also has an ID, given in the order the entities were
+ * added, which never changes. Every entity is listed in an {@link EntityGrid} by its ID, so
+ * collision checks visit entities in the order they were added.
+ * <p>
+ * Each entity is drawn with a layer of the tile map, after that layer's tiles. Entities of the
+ * same layer are drawn in the order they were added.
+ * <p>
+ * The IDs of the {@link #MOVING} entities are also kept in a dense list, so updating them takes
+ * time in the number of moving entities rather than of all entities.
+ */
+public class EntityStore {
+
+    /* Kinds */
+    public static final byte OTHER = 0;
+    public static final byte DOOR = 1;
+    public static final byte KEY = 2;
+    public static final byte COIN = 3;
+    public static final byte DANGER = 4;
+
+    /* Flags */
+    /** The entity is a {@link MovingEntity} and is updated every tick */
+    public static final byte MOVING = 1;
+    /** The entity is a {@link Collectible} */
+    public static final byte COLLECTIBLE = 2;
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    private int size;
+    private int[] xs;
+    private int[] ys;
+    private int[] widths;
+    private int[] heights;
+    private byte[] kinds;
+    private byte[] flags;
+    private boolean[] visible;
+    /** Index of the tile layer each entity is drawn with */
+    private int[] layers;
+    private int[] ids;
+    private Entity[] entities;
+    /** Slot of each ID, or -1 once the entity is removed */
+    private int[] slots;
+    private int nextId;
+    /** IDs of the entities with the {@link #MOVING} flag, in no particular order */
+    private int[] movingIds;
+    /** Position of each moving entity's ID in {@link #movingIds} */
+    private int[] movingPositions;
+    private int movingCount;
+    private Listener listener;
+    /** One more than the highest layer of any entity added */
+    private int layerCount;
+    private final EntityGrid grid;
+    /** Visible entities found by the last {@link #findVisible}, and the buffers sorting them */
+    private int[] drawOrder;
+    private int[] candidates;
+    private int[] layerStarts;
+
+    /**
+     * Creates an empty store.
+     *
+     * @param width  width of the map in tiles
+     * @param height height of the map in tiles
+     */
+    public EntityStore(int width, int height) {
+        xs = new int[INITIAL_CAPACITY];
+        ys = new int[INITIAL_CAPACITY];
+        widths = new int[INITIAL_CAPACITY];
+        heights = new int[INITIAL_CAPACITY];
+        kinds = new byte[INITIAL_CAPACITY];
+        flags = new byte[INITIAL_CAPACITY];
+        visible = new boolean[INITIAL_CAPACITY];
+        layers = new int[INITIAL_CAPACITY];
+        ids = new int[INITIAL_CAPACITY];
+        entities = new Entity[INITIAL_CAPACITY];
+        slots = new int[INITIAL_CAPACITY];
+        movingIds = new int[INITIAL_CAPACITY];
+        movingPositions = new int[INITIAL_CAPACITY];
+        grid = new EntityGrid(width, height);
+        drawOrder = new int[INITIAL_CAPACITY];
+        candidates = new int[INITIAL_CAPACITY];
+        layerStarts = new int[0];
+    }
+
+
+    /* Accessors */
+
+    /**
+     * Gets the number of entities, which occupy slots {@code [0, size)}.
+     */
+    public int size() { return size; }
+
+    /**
+     * Gets the number of entities with the {@link #MOVING} flag.
+     */
+    public int getMovingCount() { return movingCount; }
+
+    public Entity getEntity(int slot) { return entities[slot]; }
+
+    public int getId(int slot) { return ids[slot]; }
+
+    public int getX(int slot) { return xs[slot]; }
+
+    public int getY(int slot) { return ys[slot]; }
+
+    public int getWidth(int slot) { return widths[slot]; }
+
+    public int getHeight(int slot) { return heights[slot]; }
+
+    public byte getKind(int slot) { return kinds[slot]; }
+
+    public boolean hasFlag(int slot, byte flag) { return (flags[slot] & flag) != 0; }
+
+    public boolean isVisible(int slot) { return visible[slot]; }
+
+    public int getLayer(int slot) { return layers[slot]; }
+
+    /**
+     * Gets the slots found by the last {@link #findVisible}, in the order they are drawn. Only the
+     * number of elements it returned are valid, until an entity is added or removed.
+     */
+    public int[] getDrawOrder() { return drawOrder; }
+
+    /**
+     * Gets the slot of the entity with the specified ID.
+     *
+     * @return the slot, or -1 if the entity has been removed
+     */
+    public int getSlot(int id) { return (id < nextId) ? slots[id] : -1; }
+
+
+    /* Mutators */
+
+    /**
+     * Adds an entity after every entity added before it.
+     *
+     * @param e       the entity
+     * @param layer   index of the tile layer the entity is drawn with
+     * @param visible whether the entity is drawn
+     * @return        the ID of the entity
+     */
+    public int add(Entity e, int layer, boolean visible) {
+        if (size == xs.length) { grow(); }
+        if (nextId == slots.length) {
+            slots = Arrays.copyOf(slots, slots.length * 2);
+            movingPositions = Arrays.copyOf(movingPositions, slots.length);
+        }
+
+        // Entity subclasses may shadow the size, so take the rectangle collisions use
+        Rectangle2D.Double bounds = e.getBoundingRectangle();
+        int id = nextId++;
+        int slot = size++;
+        xs[slot] = (int) bounds.x;
+        ys[slot] = (int) bounds.y;
+        widths[slot] = (int) bounds.width;
+        heights[slot] = (int) bounds.height;
+        kinds[slot] = getKind(e);
+        flags[slot] = (byte) (((e instanceof MovingEntity) ? MOVING : 0) |
+            ((e instanceof Collectible) ? COLLECTIBLE : 0));
+        this.visible[slot] = visible;
+        layers[slot] = layer;
+        layerCount = Math.max(layerCount, layer + 1);
+        ids[slot] = id;
+        entities[slot] = e;
+        slots[id] = slot;
+        if ((flags[slot] & MOVING) != 0) {
+            if (movingCount == movingIds.length) { movingIds = Arrays.copyOf(movingIds, movingCount * 2); }
+            movingPositions[id] = movingCount;
+            movingIds[movingCount++] = id;
+        }
+        grid.add(id, xs[slot], ys[slot], widths[slot], heights[slot]);
+        return id;
+    }
+
+    /**
+     * Removes an entity, moving the last entity into its slot.
+     *
+     * @param slot slot of the entity
+     */
+    public void remove(int slot) {
+        if ((flags[slot] & MOVING) != 0) {
+            int lastId = movingIds[--movingCount];
+            movingIds[movingPositions[ids[slot]]] = lastId;
+            movingPositions[lastId] = movingPositions[ids[slot]];
+        }
+        grid.remove(ids[slot]);
+        slots[ids[slot]] = -1;
+
+        int last = --size;
+        if (slot != last) {
+            xs[slot] = xs[last];
+            ys[slot] = ys[last];
+            widths[slot] = widths[last];
+            heights[slot] = heights[last];
+            kinds[slot] = kinds[last];
+            flags[slot] = flags[last];
+            visible[slot] = visible[last];
+            layers[slot] = layers[last];
+            ids[slot] = ids[last];
+            entities[slot] = entities[last];
+            slots[ids[slot]] = slot;
+        }
+        entities[last] = null;
+    }
+
+    public void setVisible(int slot, boolean visible) { this.visible[slot] = visible; }
+
+    /**
+     * Sets the listener told when a moving entity is updated, replacing any previous listener.
+     *
+     * @param listener the listener, or null for none
+     */
+    public void setListener(Listener listener) { this.listener = listener; }
+
+    /**
+     * Removes every entity.
+     */
+    public void clear() {
+        Arrays.fill(entities, 0, size, null);
+        size = 0;
+        nextId = 0;
+        movingCount = 0;
+        layerCount = 0;
+        grid.clear();
+    }
+
+
+    /* Methods */
+
+    /**
+     * Updates every moving entity, records where it moved to and tells the listener.
+     */
+    public void updateMoving() {
+        for (int i = 0; i < movingCount; i++) {
+            int slot = slots[movingIds[i]];
+            MovingEntity e = (MovingEntity) entities[slot];
+            int oldX = xs[slot];
+            int oldY = ys[slot];
+            e.update();
+            xs[slot] = e.getX();
+            ys[slot] = e.getY();
+            grid.move(ids[slot], xs[slot], ys[slot], widths[slot], heights[slot]);
+            if (listener != null) { listener.entityUpdated(slot, oldX, oldY); }
+        }
+    }
+
+    /**
+     * Finds the first entity, in the order they were added, that is of a known kind and overlaps
+     * a rectangle. Invisible entities are included.
+     *
+     * @param x x-coordinate of the rectangle in pixels
+     * @param y y-coordinate of the rectangle in pixels
+     * @param w width of the rectangle in pixels
+     * @param h height of the rectangle in pixels
+     * @return  slot of the entity, or -1 if none overlaps the rectangle
+     */
+    public int findCollision(int x, int y, int w, int h) {
+        if (w <= 0 || h <= 0) { return -1; }
+        int count = grid.query(x, y, w, h);
+        int[] found = grid.getResults();
+        for (int i = 0; i < count; i++) {
+            int slot = slots[found[i]];
+            if (kinds[slot] == OTHER) { continue; }
+            if (widths[slot] <= 0 || heights[slot] <= 0) { continue; }
+            if (xs[slot] < x + w && x < xs[slot] + widths[slot] &&
+                ys[slot] < y + h && y < ys[slot] + heights[slot]) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Finds the visible entities listed in the cells a rectangle covers, such as the screen, and
+     * sorts them into drawing order: by layer, then in the order they were added. Entities in no
+     * cell the rectangle covers are never visited. The sort is a stable counting sort by layer
+     * whose buffers are kept from frame to frame, so it allocates nothing once they have grown.
+     *
+     * @param x x-coordinate of the rectangle in pixels
+     * @param y y-coordinate of the rectangle in pixels
+     * @param w width of the rectangle in pixels
+     * @param h height of the rectangle in pixels
+     * @return  number of entities found, whose slots are in {@link #getDrawOrder()}
+     */
+    public int findVisible(int x, int y, int w, int h) {
+        int count = grid.query(x, y, w, h);
+        int[] found = grid.getResults();
+        if (candidates.length < count) {
+            candidates = new int[Math.max(count, candidates.length * 2)];
+            drawOrder = new int[candidates.length];
+        }
+        if (layerStarts.length < layerCount + 1) { layerStarts = new int[layerCount + 1]; }
+        Arrays.fill(layerStarts, 0, layerCount + 1, 0);
+
+        // Count the visible entities of each layer, in ascending ID order
+        int visibleCount = 0;
+        for (int i = 0; i < count; i++) {
+            int slot = slots[found[i]];
+            if (!visible[slot]) { continue; }
+            candidates[visibleCount++] = slot;
+            layerStarts[layers[slot] + 1]++;
+        }
+        for (int layer = 1; layer <= layerCount; layer++) { layerStarts[layer] += layerStarts[layer - 1]; }
+        for (int i = 0; i < visibleCount; i++) {
+            int slot = candidates[i];
+            drawOrder[layerStarts[layers[slot]]++] = slot;
+        }
+        return visibleCount;
+    }
+
+    private static byte getKind(Entity e) {
+        if (e instanceof Door) { return DOOR; }
+        if (e instanceof Key) { return KEY; }
+        if (e instanceof Coin) { return COIN; }
+        if (e instanceof DangerObject) { return DANGER; }
+        return OTHER;
+    }
+
+    /**
+     * Told when a moving entity is updated.
+     */
+    public interface Listener {
+
+        /**
+         * Called after a moving entity was updated. Its new bounding rectangle is in the store,
+         * and has the same size as the old one.
+         *
+         * @param slot slot of the entity
+         * @param oldX x-coordinate of the entity's bounding rectangle before the update
+         * @param oldY y-coordinate of the entity's bounding rectangle before the update
+         */
+        void entityUpdated(int slot, int oldX, int oldY);
+    }
+
+    private void grow() {
+        int capacity = xs.length * 2;
+        xs = Arrays.copyOf(xs, capacity);
+        ys = Arrays.copyOf(ys, capacity);
+        widths = Arrays.copyOf(widths, capacity);
+        heights = Arrays.copyOf(heights, capacity);
+        kinds = Arrays.copyOf(kinds, capacity);
+        flags = Arrays.copyOf(flags, capacity);
+        visible = Arrays.copyOf(visible, capacity);
+        layers = Arrays.copyOf(layers, capacity);
+        ids = Arrays.copyOf(ids, capacity);
+        entities = Arrays.copyOf(entities, capacity);
+    }
+}
@@ -0,0 +1,47 @@
+package Tile;
+
+/**
+ * LayerProperty.java <hr>
+ * Boolean properties of a whole tile layer, deciding how {@link TileMap} uses it. They are set with
+ * custom properties on a layer in the TMX file, e.g.
+ * {@code <property name="static" type="bool" value="false"/>}, matched the same way as
+ * {@link TileProperty} names. Layers without them keep the original conventions (see
+ * {@link TMXReader}).
+ */
+public enum LayerProperty {
+    /** Drawn by the tile map */
+    VISIBLE,
+    /** Never changes between frames, so it can be drawn from pre-rendered chunks */
+    STATIC,
+    /** Its tiles count towards the cell flags and collision map */
+    COLLIDABLE,
+    /** Its tiles spawn entities when the level starts */
+    ENTITY_SPAWN;
+
+    private static final LayerProperty[] PROPERTIES = values();
+
+    /**
+     * Gets the bit representing this property in a layer bitmask.
+     *
+     * @return bit mask with only this property's bit set
+     */
+    public int bit() { return PropertyFlags.bit(this); }
+
+    /**
+     * Checks if this property is set in the specified bitmask.
+     *
+     * @param flags bitmask of properties
+     * @return      {@code true} if the property is set, {@code false} otherwise
+     */
+    public boolean isSet(int flags) { return PropertyFlags.isSet(this, flags); }
+
+    /**
+     * Gets the property with the specified Tiled property name.
+     *
+     * @param name name of the custom property
+     * @return     the matching property, or null if the name is not a known property
+     */
+    public static LayerProperty fromName(String name) {
+        return PropertyFlags.fromName(PROPERTIES, name);
+    }
+}
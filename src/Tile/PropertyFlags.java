@@ -0,0 +1,47 @@
+package Tile;
+
+/**
+ * PropertyFlags.java <hr>
+ * Bitmask helpers shared by the {@link TileProperty} and {@link LayerProperty} enums. Each property
+ * is represented by the bit of its ordinal, and is named in Tiled by its constant name matched
+ * ignoring case, spaces, dashes and underscores.
+ */
+final class PropertyFlags {
+
+    private PropertyFlags() {}
+
+
+    /* Methods */
+
+    /**
+     * Gets the bit representing a property in a bitmask.
+     *
+     * @param property property of a flag enum
+     * @return         bit mask with only the property's bit set
+     */
+    static int bit(Enum<?> property) { return 1 << property.ordinal(); }
+
+    /**
+     * Checks if a property is set in the specified bitmask.
+     *
+     * @param property property of a flag enum
+     * @param flags    bitmask of properties
+     * @return         {@code true} if the property is set, {@code false} otherwise
+     */
+    static boolean isSet(Enum<?> property, int flags) { return (flags & bit(property)) != 0; }
+
+    /**
+     * Gets the property with the specified Tiled property name.
+     *
+     * @param properties every property of the enum
+     * @param name       name of the custom property
+     * @return           the matching property, or null if the name is not a known property
+     */
+    static <E extends Enum<E>> E fromName(E[] properties, String name) {
+        String normalised = name.replaceAll("[\\s_-]", "");
+        for (E property : properties) {
+            if (property.name().replace("_", "").equalsIgnoreCase(normalised)) { return property; }
+        }
+        return null;
+    }
+}
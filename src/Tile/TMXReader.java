@@ -2,47 +2,107 @@ package Tile;
 
 import java.awt.Image;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.function.Function;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.NamedNodeMap;
-import org.w3c.dom.NodeList;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 
+import Game.GameContext;
 import Game.GamePanel;
 import Managers.BackgroundManager;
 import Managers.ImageManager;
+import Managers.TextureAtlas;
 
 /**
  * TMXReader.java <hr>
  * Custom tile map reader based on the Tiled Map Editor's TMX format. This class reads in a TMX file
  * and builds TileMap object with individual TileLayer objects.
+ * <p>
+ * Custom boolean properties on tilesets and layers are read as {@link TileProperty} flags. Maps
+ * without them keep the original conventions: tiles of the "Terrain" layer are solid and tiles
+ * whose image name contains "ladder" are ladders. The "DangerObject" layer hurts the player through
+ * the entities it spawns, not through the {@link TileProperty#HAZARD} flag.
+ * <p>
+ * Layers are added to the tile map in document order, which is the order they are drawn in. Their
+ * {@link LayerProperty} flags can also be set with custom properties. By default every layer is
+ * static and collidable, the "Coin", "Door", "DangerObject", "InvisiblePotion", "Life" and "Key"
+ * layers spawn entities, and every layer except "InvisiblePotion" and "Life" is visible. The
+ * {@code visible} attribute set by the editor is ignored, as the shipped maps hide layers with it
+ * while editing.
+ * <p>
+ * The TMX and TSX files are read with a streaming {@link XMLStreamReader} rather than built into
+ * document trees, and layer data is decoded from the parser's character buffer straight into the
+ * layer's GID array by a {@link CSVLayerDecoder}, or a {@link Base64LayerDecoder} for base64 data
+ * (uncompressed, zlib or gzip), so parsing a map allocates little beyond the layers themselves
+ * however large the map is. Tilesets read from TSX files are kept in the {@link TilesetCache}, so
+ * other maps and later loads of the same map that use them do not read them again.
+ * <p>
+ * Infinite maps ({@code infinite="1"}) store their layers as {@code <chunk>} elements. Their layers
+ * become {@link ChunkedTileLayer}s covering the bounding box of every chunk, sharing one
+ * {@link ChunkResidency}. Compressed chunks are kept as read and only inflated when first needed,
+ * and other chunks are compressed as they are read, so the whole world is never held decoded.
+ * <p>
+ * With {@link #setUseCompiledMap(boolean)}, the map is loaded from its {@link CompiledMap} when
+ * that is up to date, and the compiled map is written after the TMX file has been parsed when it
+ * is not. Backgrounds are always loaded from their image files.
  */
 public class TMXReader {
 
     private String mapName;
     private String folderPath;
     private String tmxFilePath;
-    private DocumentBuilderFactory dbFactory;
+    /** Share of the progress given to parsing the TMX file, the rest is loading the backgrounds */
+    private static final double PARSE_PROGRESS = 0.9;
+
+    private XMLInputFactory xmlFactory;
     private HashMap<Integer, Tile> tileSet;
+    /** Atlas holding the images of every tile of the map */
+    private TextureAtlas tileAtlas;
+    /** Atlas region of each tile image, keyed by its pixels, which tiles with equal images share */
+    private IdentityHashMap<int[], TextureAtlas.Region> tileRegions;
+    /** Tiles indexed by GID, shared by every layer of the map */
+    private Tile[] tileTable;
+    /** Versions of {@link #tileTable} with layer properties applied, keyed by the flags changed */
+    private HashMap<Long, Tile[]> layerTileTables;
 
     private int mapWidth, mapHeight;
+    /** True if the map is infinite, with its layers stored as chunks */
+    private boolean infinite;
+    /** Width and height of the chunks of an infinite map, 0 until the first chunk is read */
+    private int chunkSize;
+    /** Layers of an infinite map, kept until the chunks of every layer have been read */
+    private ArrayList<ChunkedLayer> chunkedLayers;
+    private long chunkBudgetBytes = ChunkResidency.DEFAULT_BUDGET_BYTES;
+    private boolean useCompiledMap;
+    /** Number of TSX files of the current map found in the {@link TilesetCache} */
+    private int cachedTilesets;
+    /** Compiled map recorded while the TMX file is parsed, or null if none is to be written */
+    private CompiledMap compiled;
     private TileMap tileMap;
-    private GamePanel panel;
+    private GameContext context;
+    private volatile double progress;
+    private long tmxFileLength;
     public static final String MAP_FOLDER = System.getProperty("user.dir") + File.separator + 
         "assets" + File.separator + "maps";
 
-    public TMXReader(GamePanel panel) {
-        this.panel = panel;
-        this.dbFactory = DocumentBuilderFactory.newInstance();
+    public TMXReader(GameContext context) {
+        this.context = context;
+        this.xmlFactory = XMLInputFactory.newInstance();
         this.tileSet = new HashMap<>();
         ImageManager.getInstance();
     }
 
-    public TMXReader(GamePanel panel, String mapName) {
-        this(panel);
+    public TMXReader(GameContext context, String mapName) {
+        this(context);
         this.mapName = mapName;
         this.folderPath = MAP_FOLDER + File.separator + mapName;
         this.tmxFilePath = folderPath + File.separator + mapName + ".tmx";
@@ -61,9 +121,31 @@ public class TMXReader {
 
     public TileMap getTileMap() { return tileMap; }
 
+    /**
+     * Gets how far the current call to {@link #loadTMXTileMap(String)} has got. Safe to call from
+     * any thread.
+     * 
+     * @return fraction of the map loaded so far [0, 1]
+     */
+    public double getProgress() { return progress; }
+
 
     /* Mutators */
 
+    /**
+     * Sets the memory budget for the decoded chunks of infinite maps.
+     * 
+     * @param chunkBudgetBytes budget in bytes
+     */
+    public void setChunkBudget(long chunkBudgetBytes) { this.chunkBudgetBytes = chunkBudgetBytes; }
+
+    /**
+     * Sets whether maps are loaded from, and compiled into, {@link CompiledMap} files.
+     * 
+     * @param useCompiledMap true to use compiled maps, false to always parse the TMX file
+     */
+    public void setUseCompiledMap(boolean useCompiledMap) { this.useCompiledMap = useCompiledMap; }
+
     public void setMapName(String mapName) { 
         this.mapName = mapName; 
         this.folderPath = MAP_FOLDER + File.separator + mapName;
@@ -94,137 +176,568 @@ public class TMXReader {
         this.folderPath = MAP_FOLDER + File.separator + mapName;
         this.tmxFilePath = folderPath + File.separator + mapName + ".tmx";
         System.out.println("[TMX READER] Loading TMX Map: " + mapName);
-        try {
-            DocumentBuilder dBuilder = dbFactory.newDocumentBuilder();
-            Document doc = dBuilder.parse(tmxFilePath);
-
-            // Normalize the XML structure and extract the <tileset> elements
-            doc.getDocumentElement().normalize();
-            NodeList tilesetList = doc.getElementsByTagName("tileset");
+        progress = 0;
+        tileAtlas = new TextureAtlas(mapName + " tiles");
+        tileRegions = new IdentityHashMap<>();
+        tileMap = null;
+        chunkSize = 0;
+        chunkedLayers = new ArrayList<>();
+        tileSet.clear();
+        cachedTilesets = 0;
+
+        File compiledFile = new File(folderPath, mapName + CompiledMap.EXTENSION);
+        CompiledMap cached = useCompiledMap ? CompiledMap.read(compiledFile, folderPath) : null;
+        if (cached != null) { loadCompiledMap(cached); }
+        else { 
+            compiled = useCompiledMap ? new CompiledMap() : null;
+            parseTMXFile(); 
+            if (compiled != null) { writeCompiledMap(compiledFile); }
+        }
 
-            // Get map dimensions from <map> element
-            Element mapElement = (Element) doc.getElementsByTagName("map").item(0);
-            mapWidth = Integer.parseInt(mapElement.getAttribute("width"));
-            mapHeight = Integer.parseInt(mapElement.getAttribute("height"));
+        // Load background assets from Background folder inside map assets
+        tileMap.setBackgroundManager(loadBGManager());
+        progress = 1;
 
-            
-            // Load tile data from <tileset> elements
-            for (int i = 0; i < tilesetList.getLength(); i++) {
-
-                // Get the tile id from the <firstgid> attribute
-                int firstGid = Integer.parseInt(tilesetList.item(i).getAttributes().
-                    getNamedItem("firstgid").getNodeValue());
-
-                // Get TSX resource from <source> attribute
-                Element tilesetElement = (Element) tilesetList.item(i);
-                String imagePath = tilesetElement.getAttribute("source");
-                if (imagePath != null && !imagePath.isEmpty()) {
-                    tileSet.put(firstGid, getTileFromTSXResource(folderPath + File.separator + imagePath));
-                    continue;
-                }
+        System.out.println("[TMX READER] Done loading Map: " + mapName + " (" + mapWidth + "x" + mapHeight + ")" + 
+            " with " + tileSet.size() + " tiles (" + cachedTilesets + " tilesets already cached)");
+    }
 
-                // Get source to Tile image from nested <image> element
-                NamedNodeMap attributes = tilesetElement.getElementsByTagName("image").
-                    item(0).getAttributes();
-                for (int j = 0; j < attributes.getLength(); j++) {
-                    if (attributes.item(j).getNodeName().equals("source")) {
-                        imagePath = attributes.item(j).getNodeValue();
-                        break;
+    /**
+     * Parses the TMX file into the tile map.
+     */
+    private void parseTMXFile() throws Exception {
+        tmxFileLength = Math.max(1, new File(tmxFilePath).length());
+        if (compiled != null) { compiled.addSource(mapName + ".tmx"); }
+
+        // Elements are handled as they are reached; tilesets always come before the layers
+        try (InputStream in = new FileInputStream(tmxFilePath)) {
+            XMLStreamReader reader = xmlFactory.createXMLStreamReader(in);
+            try {
+                while (reader.hasNext()) {
+                    if (reader.next() != XMLStreamConstants.START_ELEMENT) { continue; }
+                    switch (reader.getLocalName()) {
+                        case "map":
+                            mapWidth = Integer.parseInt(reader.getAttributeValue(null, "width"));
+                            mapHeight = Integer.parseInt(reader.getAttributeValue(null, "height"));
+                            infinite = "1".equals(reader.getAttributeValue(null, "infinite"));
+                            break;
+                        case "tileset":
+                            loadTileset(reader);
+                            advanceProgress(reader);
+                            break;
+                        case "layer":
+                            if (!infinite && tileMap == null) { createTileMap(); }
+                            TileLayer layer = loadTileLayer(reader);
+                            if (layer != null) { tileMap.addTileLayer(layer); }
+                            advanceProgress(reader);
+                            break;
                     }
                 }
-                Image image = ImageManager.loadImage(folderPath + File.separator + imagePath);
-                tileSet.put(firstGid, new Tile(
-                    image.getScaledInstance(GamePanel.TILE_SIZE, GamePanel.TILE_SIZE, Image.SCALE_SMOOTH), 
-                    getTileName(imagePath), false
-                ));
-            }
-
-            // Load all Tile layers from <layer> elements
-            loadTileMapLayers(doc);
+            } finally { reader.close(); }
+        }
+        if (infinite) { addChunkedLayers(); }
+        if (tileMap == null) { createTileMap(); }
+    }
 
-            // Load background assets from Background folder inside map assets
-            tileMap.setBackgroundManager(loadBGManager());
+    /**
+     * Builds the tile map from a compiled map, in the same order the TMX file would have been
+     * read in so the tile atlas is laid out the same.
+     */
+    private void loadCompiledMap(CompiledMap map) {
+        System.out.println("[TMX READER] Loading compiled map: " + mapName + CompiledMap.EXTENSION);
+        mapWidth = map.getWidth();
+        mapHeight = map.getHeight();
+        chunkSize = map.getChunkSize();
+        infinite = chunkSize > 0;
+        for (CompiledMap.TileData tile : map.getTiles()) {
+            tileSet.put(tile.gid, new Tile(getTileRegion(tile.pixels), tile.name, tile.flags));
+        }
+        createTileMap();
+
+        ChunkResidency residency = null;
+        for (CompiledMap.LayerData data : map.getLayers()) {
+            Tile[] table = getLayerTileTable(data.setFlags, data.clearFlags);
+            if (data.gids != null) {
+                tileMap.addTileLayer(new TileLayer(data.name, mapWidth, mapHeight, table, data.flags, 
+                    data.gids));
+                continue;
+            }
+            if (residency == null) { residency = new ChunkResidency(chunkBudgetBytes); }
+            ChunkedTileLayer layer = new ChunkedTileLayer(data.name, mapWidth, mapHeight, table, 
+                data.flags, chunkSize, data.gzip, residency);
+            for (int i = 0; i < data.chunks.length; i++) { 
+                layer.setEncoded(data.chunkIndices[i], data.chunks[i]); 
+            }
+            tileMap.addTileLayer(layer);
+        }
+        tileMap.setSpawns(map.getSpawns());
+        progress = PARSE_PROGRESS;
+    }
 
-        } catch (Exception e) { throw e; }
+    /**
+     * Writes the compiled map recorded while the TMX file was parsed. A map that cannot be
+     * written is simply parsed again next time.
+     */
+    private void writeCompiledMap(File file) {
+        compiled.setSize(mapWidth, mapHeight, infinite ? chunkSize : 0);
+        compiled.setSpawns(tileMap.getSpawns());
+        try {
+            compiled.write(file, folderPath);
+            System.out.println("[TMX READER] Wrote compiled map: " + file.getName());
+        } catch (IOException e) { 
+            System.out.println("[TMX READER] Could not write compiled map " + file.getName() + ": " + e); 
+        }
+        compiled = null;
+    }
 
-        System.out.println("[TMX READER] Done loading Map: " + mapName + " (" + mapWidth + "x" + mapHeight + ")" + 
-            " with " + tileSet.size() + " tiles");
+    /**
+     * Loads the tile of the {@code <tileset>} element the reader is at, either from the TSX file
+     * it refers to or from its nested {@code <image>} element.
+     */
+    private void loadTileset(XMLStreamReader reader) throws XMLStreamException, IOException {
+        int firstGid = Integer.parseInt(reader.getAttributeValue(null, "firstgid"));
+        String tsxPath = reader.getAttributeValue(null, "source");
+        if (tsxPath != null && !tsxPath.isEmpty()) {
+            if (compiled != null) { compiled.addSource(tsxPath); }
+            tileSet.put(firstGid, getTileFromTSXResource(tsxPath, firstGid));
+            return;
+        }
+        TilesetCache.Tileset tileset = readTileset(reader, null, new File(folderPath));
+        tileSet.put(firstGid, createTile(tileset, firstGid, tileset.imagePath));
     }
 
-    private Tile getTileFromTSXResource(String tsxFilePath) {
+    /**
+     * Gets the tile of a TSX file, from the {@link TilesetCache} if it has already been read.
+     * 
+     * @param tsxPath  path of the TSX file relative to the map folder
+     * @param firstGid GID of the tile
+     * @return         the tile, or null if the TSX file could not be read
+     */
+    private Tile getTileFromTSXResource(String tsxPath, int firstGid) {
         Tile tile = null;
+        File tsxFile = new File(folderPath, tsxPath);
         try {
-            DocumentBuilder dBuilder = dbFactory.newDocumentBuilder();
-            Document doc = dBuilder.parse(tsxFilePath);
-
-            // Normalize the XML structure and extract the <image> element
-            doc.getDocumentElement().normalize();
-            NodeList tilesetList = doc.getElementsByTagName("image");
-
-            // Load in tile specified in <image> element
-            Element tilesetElement = (Element) tilesetList.item(0);
-            String imagePath = tilesetElement.getAttribute("source");
-            Image image = ImageManager.loadImage(folderPath + File.separator + imagePath);
-            tile = new Tile(
-                image.getScaledInstance(GamePanel.TILE_SIZE, GamePanel.TILE_SIZE, Image.SCALE_SMOOTH), 
-                getTileName(imagePath), false
-            );
+            TilesetCache.Tileset tileset = TilesetCache.getTileset(tsxFile);
+            if (tileset != null) { cachedTilesets++; }
+            else {
+                try (InputStream in = new FileInputStream(tsxFile)) {
+                    XMLStreamReader reader = xmlFactory.createXMLStreamReader(in);
+                    try {
+                        // The root <tileset> element holds the <image> element
+                        reader.nextTag();
+                        tileset = readTileset(reader, tsxFile, tsxFile.getParentFile());
+                    } finally { reader.close(); }
+                }
+                TilesetCache.putTileset(tsxFile, tileset);
+            }
+            // Images are relative to the TSX file
+            String tsxFolder = tsxPath.substring(0, tsxPath.lastIndexOf('/') + 1);
+            tile = createTile(tileset, firstGid, tsxFolder + tileset.imagePath);
             
-        } catch (Exception e) { e.printStackTrace(); }
+        } catch (Exception e) { 
+            e.printStackTrace(); 
+            // Do not compile a map that is missing a tileset
+            compiled = null;
+        }
         
         return tile;
     }
 
-    private void loadTileMapLayers(Document doc) {
-        tileMap = new TileMap(panel, null, null, mapWidth, mapHeight);
-        NodeList layerList = doc.getElementsByTagName("layer");
-        
-        // Loop through each layer in the TMX file and build each TileLayer
-        for (int i = 0; i < layerList.getLength(); i++) {
-            Element layerElement = (Element) layerList.item(i);
-            String layerName = layerElement.getAttributes().getNamedItem("name").getNodeValue();
-            System.out.println("[TMX READER] Loading layer: " + layerName);
-        
-            // Get the layout of the Tile for the current layer
-            NodeList dataList = layerElement.getElementsByTagName("data");
-            Element dataElement = (Element) dataList.item(0);
-            int[][] tileIDs = getTileIDsFromCSV(dataElement.getTextContent().strip());
-            
-            // Arrange the Tiles onto the TileLayer
-            TileLayer layer = setupTileLayer(layerName, tileIDs);
-            tileMap.addTileLayer(layerName, layer);
+    /**
+     * Reads the rest of the {@code <tileset>} element the reader is at: the first {@code <image>}
+     * and the custom properties nested in it. The image is taken from the {@link TilesetCache}.
+     * 
+     * @param tsxFile the TSX file being read, or null for a tileset in the TMX file
+     * @param folder  folder the path of the image is relative to
+     */
+    private TilesetCache.Tileset readTileset(XMLStreamReader reader, File tsxFile, File folder) 
+        throws XMLStreamException, IOException {
+        String imagePath = null;
+        ArrayList<Property> properties = new ArrayList<>();
+        for (int depth = 1; depth > 0; ) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.END_ELEMENT) { depth--; }
+            if (event != XMLStreamConstants.START_ELEMENT) { continue; }
+            depth++;
+            switch (reader.getLocalName()) {
+                case "image":
+                    if (imagePath == null) { imagePath = reader.getAttributeValue(null, "source"); }
+                    break;
+                case "property":
+                    depth -= readProperty(reader, properties);
+                    break;
+            }
+        }
+        if (imagePath == null) { throw new XMLStreamException("Tileset has no image"); }
+
+        String tileName = getTileName(imagePath);
+        return new TilesetCache.Tileset(tsxFile, imagePath, tileName, 
+            applyPropertyFlags(properties, getDefaultTileFlags(tileName), TileProperty::fromName), 
+            TilesetCache.getImage(new File(folder, imagePath)));
+    }
+
+    /**
+     * Creates the tile of a tileset, adding its image to the tile atlas.
+     * 
+     * @param tileset     the tileset
+     * @param firstGid    GID of the tile
+     * @param imageSource path of the tile's image relative to the map folder
+     */
+    private Tile createTile(TilesetCache.Tileset tileset, int firstGid, String imageSource) {
+        int[] pixels = tileset.image.pixels;
+        if (compiled != null) {
+            compiled.addSource(imageSource);
+            compiled.addTile(firstGid, tileset.tileName, tileset.flags, pixels);
         }
+        return new Tile(getTileRegion(pixels), tileset.tileName, tileset.flags);
+    }
+
+    /**
+     * Gets the atlas region of a tile image, adding the image to the tile atlas unless a tile with
+     * the same pixels already did. Tiles whose images have the same contents are given the same 
+     * pixels by the {@link TilesetCache} and the {@link CompiledMap}, so they share one region.
+     * 
+     * @param pixels pixels of the image, scaled to the tile size
+     * @return       the region
+     */
+    private TextureAtlas.Region getTileRegion(int[] pixels) {
+        TextureAtlas.Region region = tileRegions.get(pixels);
+        if (region == null) {
+            region = tileAtlas.add(ImageManager.createImage(pixels, GamePanel.TILE_SIZE, 
+                GamePanel.TILE_SIZE));
+            tileRegions.put(pixels, region);
+        }
+        return region;
+    }
+
+    /**
+     * Creates the tile map once every tileset has been loaded.
+     */
+    private void createTileMap() {
+        tileAtlas.printSummary();
+        tileMap = new TileMap(context, null, null, mapWidth, mapHeight, infinite ? chunkSize : 0);
+        buildTileTables();
     }
 
-    private int[][] getTileIDsFromCSV(String csv) {
-        String[] rows = csv.split("\n");
-        int[][] tileIDs = new int[rows.length][];
-        for (int i = 0; i < rows.length; i++) {
-            String[] columns = rows[i].split(",");
-            tileIDs[i] = new int[columns.length];
-            for (int j = 0; j < columns.length; j++) {
-                tileIDs[i][j] = Integer.parseInt(columns[j].trim());
+    /**
+     * Reads the rest of the {@code <layer>} element the reader is at into a tile layer.
+     * 
+     * @return the layer, or null for a layer of an infinite map, which is added to 
+     *         {@link #chunkedLayers} until the position of every chunk is known
+     */
+    private TileLayer loadTileLayer(XMLStreamReader reader) throws XMLStreamException {
+        String layerName = reader.getAttributeValue(null, "name");
+        System.out.println("[TMX READER] Loading layer: " + layerName);
+        ArrayList<Property> properties = new ArrayList<>();
+        ChunkedLayer chunked = null;
+        int[] gids = null;
+        for (int depth = 1; depth > 0; ) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.END_ELEMENT) { depth--; }
+            if (event != XMLStreamConstants.START_ELEMENT) { continue; }
+            switch (reader.getLocalName()) {
+                case "property":
+                    depth += 1 - readProperty(reader, properties);
+                    break;
+                case "data":
+                    // Reads up to and including </data>
+                    if (infinite) { chunked = readChunks(reader, layerName, properties); }
+                    else { gids = readLayerData(reader, layerName); }
+                    break;
+                default:
+                    depth++;
             }
         }
-        return tileIDs;
+        if (chunked != null) {
+            chunkedLayers.add(chunked);
+            return null;
+        }
+        if (gids == null) { throw new XMLStreamException("Layer '" + layerName + "' has no data"); }
+        return setupTileLayer(layerName, properties, gids);
     }
 
-    private TileLayer setupTileLayer(String layerName, int[][] tileIDs) {
-        TileLayer layer = new TileLayer(mapWidth, mapHeight);
-        for (int y = 0; y < mapHeight; y++) {
-            for (int x = 0; x < mapWidth; x++) {
-                if (tileIDs[y][x] == 0) { continue; }
-                Tile newTile = tileSet.get(tileIDs[y][x]).clone();
-                if (layerName.equals("Terrain")) { newTile.setIsSolid(true); }
-                newTile.setPosition(x * GamePanel.TILE_SIZE, y * GamePanel.TILE_SIZE);
-                layer.setTile(x, y, newTile);
+    /**
+     * Decodes the {@code <data>} element the reader is at, feeding its characters to the decoder
+     * for its encoding straight from the parser's buffer.
+     */
+    private int[] readLayerData(XMLStreamReader reader, String layerName) throws XMLStreamException {
+        String encoding = reader.getAttributeValue(null, "encoding");
+        int[] gids = new int[mapWidth * mapHeight];
+        if ("base64".equals(encoding)) {
+            Base64LayerDecoder.decode(reader, reader.getAttributeValue(null, "compression"), 
+                layerName, gids);
+            return gids;
+        }
+        if (!"csv".equals(encoding)) {
+            throw new XMLStreamException("Unsupported encoding '" + encoding + "' in layer '" + 
+                layerName + "'");
+        }
+
+        readCSV(reader, layerName, gids);
+        return gids;
+    }
+
+    /**
+     * Decodes the CSV text of the element the reader is at, leaving the reader at its end.
+     */
+    private void readCSV(XMLStreamReader reader, String layerName, int[] gids) throws XMLStreamException {
+        CSVLayerDecoder decoder = new CSVLayerDecoder(layerName, gids);
+        for (int event = reader.next(); event != XMLStreamConstants.END_ELEMENT; event = reader.next()) {
+            if (event == XMLStreamConstants.CHARACTERS || event == XMLStreamConstants.CDATA ||
+                event == XMLStreamConstants.SPACE) {
+                decoder.decode(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+            }
+        }
+        decoder.finish();
+    }
+
+    /**
+     * Reads the {@code <chunk>} elements of the {@code <data>} element the reader is at. Chunks
+     * compressed with zlib or gzip are kept compressed as they are; others are decoded and
+     * compressed with zlib.
+     */
+    private ChunkedLayer readChunks(XMLStreamReader reader, String layerName, 
+        ArrayList<Property> properties) throws XMLStreamException {
+        String encoding = reader.getAttributeValue(null, "encoding");
+        String compression = reader.getAttributeValue(null, "compression");
+        boolean base64 = "base64".equals(encoding);
+        boolean compressed = base64 && compression != null && !compression.isEmpty();
+        if (!base64 && !"csv".equals(encoding)) {
+            throw new XMLStreamException("Unsupported encoding '" + encoding + "' in layer '" + 
+                layerName + "'");
+        }
+        if (compressed && !compression.equals("zlib") && !compression.equals("gzip")) {
+            throw new XMLStreamException("Unsupported compression '" + compression + "' in layer '" + 
+                layerName + "'");
+        }
+
+        ChunkedLayer layer = new ChunkedLayer(layerName, properties, "gzip".equals(compression));
+        for (int event = reader.next(); event != XMLStreamConstants.END_ELEMENT; event = reader.next()) {
+            if (event != XMLStreamConstants.START_ELEMENT) { continue; }
+            if (!reader.getLocalName().equals("chunk")) {
+                throw new XMLStreamException("Unexpected <" + reader.getLocalName() + "> in layer '" + 
+                    layerName + "'");
             }
+            int x = Integer.parseInt(reader.getAttributeValue(null, "x"));
+            int y = Integer.parseInt(reader.getAttributeValue(null, "y"));
+            int width = Integer.parseInt(reader.getAttributeValue(null, "width"));
+            int height = Integer.parseInt(reader.getAttributeValue(null, "height"));
+            if (chunkSize == 0) { chunkSize = width; }
+            if (width != chunkSize || height != chunkSize || Math.floorMod(x, chunkSize) != 0 || 
+                Math.floorMod(y, chunkSize) != 0) {
+                throw new XMLStreamException("Chunk at (" + x + ", " + y + ") of layer '" + layerName + 
+                    "' is not a " + chunkSize + "x" + chunkSize + " chunk aligned to the chunk grid");
+            }
+
+            // Reads up to and including </chunk>
+            byte[] data;
+            if (compressed) { data = Base64LayerDecoder.readBytes(reader, layerName); }
+            else {
+                int[] gids = new int[width * height];
+                if (base64) { Base64LayerDecoder.decode(reader, null, layerName, gids); }
+                else { readCSV(reader, layerName, gids); }
+                data = ChunkedTileLayer.encode(gids, false);
+            }
+            layer.chunks.add(new Chunk(x, y, data));
         }
         return layer;
     }
 
+    /**
+     * Creates the tile map of an infinite map covering every chunk, and adds its layers.
+     */
+    private void addChunkedLayers() throws XMLStreamException {
+        int minX = Integer.MAX_VALUE, minY = Integer.MAX_VALUE;
+        int maxX = Integer.MIN_VALUE, maxY = Integer.MIN_VALUE;
+        int chunkCount = 0;
+        for (ChunkedLayer layer : chunkedLayers) {
+            for (Chunk chunk : layer.chunks) {
+                minX = Math.min(minX, chunk.x);
+                minY = Math.min(minY, chunk.y);
+                maxX = Math.max(maxX, chunk.x + chunkSize);
+                maxY = Math.max(maxY, chunk.y + chunkSize);
+                chunkCount++;
+            }
+        }
+        if (chunkCount == 0) { throw new XMLStreamException("Infinite map has no chunks"); }
+
+        // The top left chunk becomes cell (0, 0) of the tile map
+        mapWidth = maxX - minX;
+        mapHeight = maxY - minY;
+        createTileMap();
+        ChunkResidency residency = new ChunkResidency(chunkBudgetBytes);
+        for (ChunkedLayer chunked : chunkedLayers) {
+            int setFlags = applyPropertyFlags(chunked.properties, getDefaultLayerFlags(chunked.name), 
+                TileProperty::fromName);
+            int clearFlags = ~applyPropertyFlags(chunked.properties, ~0, TileProperty::fromName);
+            ChunkedTileLayer layer = new ChunkedTileLayer(chunked.name, mapWidth, mapHeight, 
+                getLayerTileTable(setFlags, clearFlags), 
+                applyPropertyFlags(chunked.properties, getDefaultLayerProperties(chunked.name), 
+                    LayerProperty::fromName), 
+                chunkSize, chunked.gzip, residency);
+            for (Chunk chunk : chunked.chunks) {
+                layer.setEncoded((chunk.x - minX) / chunkSize, (chunk.y - minY) / chunkSize, chunk.data);
+            }
+            if (compiled != null) { compiled.addLayer(toLayerData(layer, setFlags, clearFlags, chunked)); }
+            tileMap.addTileLayer(layer);
+        }
+        System.out.println("[TMX READER] Read " + chunkCount + " chunks of " + chunkSize + "x" + 
+            chunkSize + " tiles, origin at (" + minX + ", " + minY + ")");
+    }
+
+    /**
+     * Reads the {@code <property>} element the reader is at into the list. Properties of a class
+     * type are skipped, leaving the properties nested in them to be read on their own.
+     * 
+     * @return 1 if the reader was moved to the end of the element, 0 if it is still at its start
+     */
+    private int readProperty(XMLStreamReader reader, ArrayList<Property> properties) 
+        throws XMLStreamException {
+        String name = reader.getAttributeValue(null, "name");
+        String value = reader.getAttributeValue(null, "value");
+        if (value != null) {
+            properties.add(new Property(name, value));
+            return 0;
+        }
+        if ("class".equals(reader.getAttributeValue(null, "type"))) { return 0; }
+        properties.add(new Property(name, reader.getElementText()));
+        return 1;
+    }
+
+    /**
+     * Builds the GID-indexed tile table from the loaded tilesets.
+     */
+    private void buildTileTables() {
+        int maxGid = 0;
+        for (int gid : tileSet.keySet()) { maxGid = Math.max(maxGid, gid); }
+        tileTable = new Tile[maxGid + 1];
+        layerTileTables = new HashMap<>();
+        for (HashMap.Entry<Integer, Tile> entry : tileSet.entrySet()) {
+            tileTable[entry.getKey()] = entry.getValue();
+        }
+    }
+
+    /**
+     * Gets the tile table for a layer whose properties set and clear the specified flags. Layers
+     * with the same properties share a table.
+     */
+    private Tile[] getLayerTileTable(int setFlags, int clearFlags) {
+        if (setFlags == 0 && clearFlags == 0) { return tileTable; }
+        long key = ((long) setFlags << 32) | (clearFlags & 0xFFFFFFFFL);
+        Tile[] table = layerTileTables.get(key);
+        if (table != null) { return table; }
+
+        table = new Tile[tileTable.length];
+        for (int gid = 0; gid < tileTable.length; gid++) {
+            Tile tile = tileTable[gid];
+            if (tile != null) { table[gid] = tile.withFlags((tile.getFlags() | setFlags) & ~clearFlags); }
+        }
+        layerTileTables.put(key, table);
+        return table;
+    }
+
+    /**
+     * Gets the flags a tile has before any custom properties are applied.
+     */
+    private int getDefaultTileFlags(String tileName) {
+        return tileName.contains("ladder") ? TileProperty.LADDER.bit() : 0;
+    }
+
+    /**
+     * Gets the flags a layer adds to its tiles before any custom properties are applied.
+     */
+    private int getDefaultLayerFlags(String layerName) {
+        return layerName.equals("Terrain") ? TileProperty.SOLID.bit() : 0;
+    }
+
+    /**
+     * Gets the {@link LayerProperty} flags a layer has before any custom properties are applied.
+     */
+    private int getDefaultLayerProperties(String layerName) {
+        int flags = LayerProperty.STATIC.bit() | LayerProperty.COLLIDABLE.bit();
+        switch (layerName) {
+            case "InvisiblePotion":
+            case "Life":
+                return flags | LayerProperty.ENTITY_SPAWN.bit();
+            case "Coin":
+            case "Door":
+            case "DangerObject":
+            case "Key":
+                return flags | LayerProperty.ENTITY_SPAWN.bit() | LayerProperty.VISIBLE.bit();
+            default:
+                return flags | LayerProperty.VISIBLE.bit();
+        }
+    }
+
+    /**
+     * Sets or clears flags according to boolean custom properties. Properties whose names the 
+     * lookup does not know are ignored.
+     * 
+     * @param properties custom properties in document order
+     * @param flags      flags before the properties are applied
+     * @param lookup     gets the property of a custom property name, or null if there is none, 
+     *                   e.g. {@link TileProperty#fromName(String)}
+     * @return           flags after the properties are applied
+     */
+    private <E extends Enum<E>> int applyPropertyFlags(ArrayList<Property> properties, int flags, 
+        Function<String, E> lookup) {
+        for (Property property : properties) {
+            E flag = lookup.apply(property.name);
+            if (flag == null) { continue; }
+            if (property.isTrue()) { flags |= PropertyFlags.bit(flag); }
+            else { flags &= ~PropertyFlags.bit(flag); }
+        }
+        return flags;
+    }
+
+    private TileLayer setupTileLayer(String layerName, ArrayList<Property> properties, int[] gids) {
+        // Layer properties apply to every tile of the layer, in both directions
+        int setFlags = applyPropertyFlags(properties, getDefaultLayerFlags(layerName), 
+            TileProperty::fromName);
+        int clearFlags = ~applyPropertyFlags(properties, ~0, TileProperty::fromName);
+        Tile[] table = getLayerTileTable(setFlags, clearFlags);
+        for (int i = 0; i < gids.length; i++) {
+            int gid = gids[i];
+            if (gid == 0) { continue; }
+            if (gid < 0 || gid >= table.length || table[gid] == null) {
+                throw new IllegalArgumentException("Unknown tile " + Integer.toUnsignedString(gid) + 
+                    " in layer '" + layerName + "' at (" + (i % mapWidth) + ", " + (i / mapWidth) + ")");
+            }
+        }
+        int layerFlags = applyPropertyFlags(properties, getDefaultLayerProperties(layerName), 
+            LayerProperty::fromName);
+        if (compiled != null) {
+            CompiledMap.LayerData data = new CompiledMap.LayerData(layerName, layerFlags, setFlags, 
+                clearFlags);
+            data.gids = gids;
+            compiled.addLayer(data);
+        }
+        return new TileLayer(layerName, mapWidth, mapHeight, table, layerFlags, gids);
+    }
+
+    /**
+     * Records the chunks of a layer of an infinite map for the compiled map.
+     */
+    private CompiledMap.LayerData toLayerData(ChunkedTileLayer layer, int setFlags, int clearFlags, 
+        ChunkedLayer chunked) {
+        CompiledMap.LayerData data = new CompiledMap.LayerData(layer.getName(), layer.getFlags(), 
+            setFlags, clearFlags);
+        data.gzip = chunked.gzip;
+        data.chunkIndices = new int[layer.getChunkCount()];
+        data.chunks = new byte[layer.getChunkCount()][];
+        int count = 0;
+        for (int i = 0; i < layer.getChunkCount(); i++) {
+            if (layer.getEncoded(i) == null) { continue; }
+            data.chunkIndices[count] = i;
+            data.chunks[count++] = layer.getEncoded(i);
+        }
+        data.chunkIndices = Arrays.copyOf(data.chunkIndices, count);
+        data.chunks = Arrays.copyOf(data.chunks, count);
+        return data;
+    }
+
     private BackgroundManager loadBGManager() {
-        BackgroundManager bgManager = new BackgroundManager(panel);
+        BackgroundManager bgManager = new BackgroundManager(context);
         try {
             String backgroundPath = folderPath + File.separator + "Assets" + 
                 File.separator + "Background";
@@ -248,7 +761,66 @@ public class TMXReader {
         return bgManager;
     }
 
+    /**
+     * Sets the progress from how far into the TMX file the reader is.
+     */
+    private void advanceProgress(XMLStreamReader reader) {
+        int offset = reader.getLocation().getCharacterOffset();
+        if (offset < 0) { return; }
+        progress = Math.min(PARSE_PROGRESS, PARSE_PROGRESS * offset / tmxFileLength);
+    }
+
     private String getTileName(String imagePath) {
         return imagePath.substring(imagePath.lastIndexOf('/') + 1, imagePath.lastIndexOf(".")).toLowerCase();
     }
+
+
+    /**
+     * A layer of an infinite map whose chunks have been read.
+     */
+    private static class ChunkedLayer {
+
+        final String name;
+        final ArrayList<Property> properties;
+        final boolean gzip;
+        final ArrayList<Chunk> chunks;
+
+        ChunkedLayer(String name, ArrayList<Property> properties, boolean gzip) {
+            this.name = name;
+            this.properties = properties;
+            this.gzip = gzip;
+            this.chunks = new ArrayList<>();
+        }
+    }
+
+    /**
+     * A chunk of a layer of an infinite map, with its position in tiles and compressed cells.
+     */
+    private static class Chunk {
+
+        final int x, y;
+        final byte[] data;
+
+        Chunk(int x, int y, byte[] data) {
+            this.x = x;
+            this.y = y;
+            this.data = data;
+        }
+    }
+
+    /**
+     * A custom property read from a TMX or TSX file.
+     */
+    private static class Property {
+
+        final String name;
+        final String value;
+
+        Property(String name, String value) {
+            this.name = name;
+            this.value = value;
+        }
+
+        boolean isTrue() { return Boolean.parseBoolean(value.trim()); }
+    }
 }
\ No newline at end of file
@@ -1,67 +1,82 @@
 package Tile;
 
-import java.awt.Image;
-import java.awt.Point;
 import java.awt.Graphics2D;
+import java.awt.Image;
+
+import Managers.TextureAtlas;
 
 /**
  * Tile.java <hr>
- * The Tile class contains the data for a single tile in the tile-based map. It contains the tile's
- * image, name, and whether it is a solid Tile (i.e. has Tile collision) or not.
+ * The Tile class contains the data for a single kind of tile in the tile-based map. It contains the 
+ * tile's image (a region of its map's {@link TextureAtlas}), name, and its {@link TileProperty} flags (e.g. whether it is a solid Tile, i.e. has
+ * Tile collision, or a ladder).
+ * <p>
+ * Tiles are immutable and shared by every cell of a {@link TileLayer} that shows them, so a tile
+ * has no position of its own. The position of a cell is derived from its index in the layer.
  */
 public class Tile {
     
-    private String name;
-    private Image image;
-    private boolean isSolid;
-    private Point position;
-
-    public Tile(Image image, String name, boolean isSolid) {
-        setImage(image);
-        position = new Point(0, 0);
+    private final String name;
+    private final TextureAtlas.Region region;
+    private final int flags;
+
+    public Tile(TextureAtlas.Region region, String name, int flags) {
+        this.region = region;
         this.name = name;
-        this.isSolid = isSolid;
+        this.flags = flags;
     }
 
 
     /** Accessors */
 
-    public boolean isSolid() { return isSolid; }
-
-    public Image getImage() { return image; }
-    
-    public String getName() { return name; }
-
-    public Point getPosition() { return position; }
-
-    public int getX() { return (int) position.getX(); }
+    public boolean isSolid() { return TileProperty.SOLID.isSet(flags); }
 
-    public int getY() { return (int) position.getY(); }
+    /**
+     * Checks if this tile has the specified property.
+     * 
+     * @param property the property to check
+     * @return         {@code true} if the tile has the property, {@code false} otherwise
+     */
+    public boolean hasProperty(TileProperty property) { return property.isSet(flags); }
 
-    public Tile clone() { return new Tile(image, name, isSolid); }
+    /**
+     * Gets the bitmask of this tile's {@link TileProperty} flags.
+     */
+    public int getFlags() { return flags; }
 
+    /**
+     * Gets the tile's image as an image of its own, sharing its pixels with the atlas.
+     */
+    public Image getImage() { return region.getImage(); }
 
-    /** Mutators */
-
-    public void setImage(Image image) { this.image = image; }
-
-    public void setName(String name) { this.name = name; }
-
-    public void setPosition(Point position) { this.position = position; }
-
-    public void setPosition(int x, int y) { this.position = new Point(x, y); }
-
-    public void setIsSolid(boolean isSolid) { this.isSolid = isSolid; }
+    public TextureAtlas.Region getRegion() { return region; }
+    
+    public String getName() { return name; }
 
 
     /** Methods */
 
-    public void draw(Graphics2D g2d, int x, int y) {
-        g2d.drawImage(image, x, y, image.getWidth(null), image.getHeight(null), null);
+    /**
+     * Gets a tile with the same image and name as this tile but the specified property flags.
+     * 
+     * @param flags bitmask of {@link TileProperty} flags
+     * @return      this tile if it already has the flags, otherwise a new tile
+     */
+    public Tile withFlags(int flags) {
+        return (flags == this.flags) ? this : new Tile(region, name, flags);
+    }
+
+    /**
+     * Draws the tile with its top left corner at the specified position.
+     * 
+     * @return false if the tile's image is still being produced and was not fully drawn
+     */
+    public boolean draw(Graphics2D g2d, int x, int y) {
+        return region.draw(g2d, x, y);
     }
 
     @Override
     public String toString() {
-        return "Tile{" + "name=" + name + ", loc=(" + position.x + "," + position.y + ")}";
+        return "Tile{" + "name=" + name + ", flags=" + Integer.toBinaryString(flags) + "}";
     }
 }
@@ -0,0 +1,280 @@
+package Tile;
+
+import java.awt.AlphaComposite;
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.GraphicsDevice;
+import java.awt.Transparency;
+import java.awt.image.BufferedImage;
+
+import Game.FrameProfiler;
+import Game.GamePanel;
+
+/**
+ * TileChunkCache.java <hr>
+ * Pre-renders a stack of static tile layers into square chunks of {@link #CHUNK_TILES} x
+ * {@link #CHUNK_TILES} tiles, so a frame only has to blit the few chunks the camera overlaps
+ * instead of drawing every visible tile of every layer.
+ * <p>
+ * Chunks are rendered on first use into images compatible with the screen, so Java2D can keep
+ * them in video memory, and are re-rendered after a cell inside them is invalidated. When drawing
+ * to an image instead (e.g. headless), chunks are premultiplied ARGB images, which the software
+ * loops blend fastest. Only the runs of cells that have tiles are blitted, and chunks without any
+ * tiles are not given an image at all. When the chunks held exceed the memory
+ * budget, the least recently drawn chunks are released. The time spent rendering each layer into
+ * chunks is recorded under that layer's {@link FrameProfiler} phase.
+ */
+public class TileChunkCache {
+
+    /** Width and height of a chunk in tiles */
+    public static final int CHUNK_TILES = 8;
+    /** Default memory budget for chunk images in bytes */
+    public static final long DEFAULT_BUDGET_BYTES = 32L << 20;
+    private static final int CHUNK_PIXELS = CHUNK_TILES * GamePanel.TILE_SIZE;
+    private static final int BYTES_PER_PIXEL = 4;
+    private static final int NONE = -1;
+
+    private final TileLayer[] layers;
+    private final int width;
+    private final int height;
+    private final int chunksX;
+    private final int chunksY;
+    private final BufferedImage[] chunks;
+    /** Bit {@code row * CHUNK_TILES + col} of a chunk's mask is set if that cell has any tile */
+    private final long[] cellMasks;
+    private final boolean[] valid;
+    private final long[] lastUsed;
+    /** Least recently drawn list of chunks with images, linked through their indices */
+    private final int[] prev, next;
+    private int head, tail;
+    private final long budgetBytes;
+    private long usedBytes;
+    private long frame;
+
+    /**
+     * Creates a cache for the specified layers with the default memory budget.
+     *
+     * @param layers layers to render into the chunks, bottom layer first
+     */
+    public TileChunkCache(TileLayer[] layers) { this(layers, DEFAULT_BUDGET_BYTES); }
+
+    /**
+     * Creates a cache for the specified layers.
+     *
+     * @param layers      layers to render into the chunks, bottom layer first. All layers must
+     *                    have the same size.
+     * @param budgetBytes memory budget for chunk images in bytes
+     */
+    public TileChunkCache(TileLayer[] layers, long budgetBytes) {
+        this.layers = layers;
+        this.budgetBytes = budgetBytes;
+        width = layers.length > 0 ? layers[0].getWidth() : 0;
+        height = layers.length > 0 ? layers[0].getHeight() : 0;
+        chunksX = (width + CHUNK_TILES - 1) / CHUNK_TILES;
+        chunksY = (height + CHUNK_TILES - 1) / CHUNK_TILES;
+        chunks = new BufferedImage[chunksX * chunksY];
+        cellMasks = new long[chunks.length];
+        valid = new boolean[chunks.length];
+        lastUsed = new long[chunks.length];
+        prev = new int[chunks.length];
+        next = new int[chunks.length];
+        head = tail = NONE;
+    }
+
+
+    /* Accessors */
+
+    /**
+     * Gets the number of chunks currently held in memory.
+     */
+    public int getResidentCount() {
+        int count = 0;
+        for (BufferedImage chunk : chunks) { if (chunk != null) { count++; } }
+        return count;
+    }
+
+    /**
+     * Gets the memory held by chunk images in bytes.
+     */
+    public long getUsedBytes() { return usedBytes; }
+
+
+    /* Methods */
+
+    /**
+     * Draws the chunks that overlap the screen.
+     *
+     * @param g2           graphics context to draw to
+     * @param offsetX      x offset of the map on screen in pixels
+     * @param offsetY      y offset of the map on screen in pixels
+     * @param screenWidth  width of the screen in pixels
+     * @param screenHeight height of the screen in pixels
+     */
+    public void draw(Graphics2D g2, int offsetX, int offsetY, int screenWidth, int screenHeight) {
+        frame++;
+        int firstX = Math.max(0, Math.floorDiv(-offsetX, CHUNK_PIXELS));
+        int lastX = Math.min(chunksX - 1, Math.floorDiv(screenWidth - 1 - offsetX, CHUNK_PIXELS));
+        int firstY = Math.max(0, Math.floorDiv(-offsetY, CHUNK_PIXELS));
+        int lastY = Math.min(chunksY - 1, Math.floorDiv(screenHeight - 1 - offsetY, CHUNK_PIXELS));
+
+        for (int cy = firstY; cy <= lastY; cy++) {
+            for (int cx = firstX; cx <= lastX; cx++) {
+                int index = cy * chunksX + cx;
+                if (!valid[index]) { renderChunk(g2.getDeviceConfiguration(), cx, cy); }
+                if (chunks[index] == null) { continue; }
+                lastUsed[index] = frame;
+                if (head != index) {
+                    unlink(index);
+                    linkFirst(index);
+                }
+                blitChunk(g2, index, cx * CHUNK_PIXELS + offsetX, cy * CHUNK_PIXELS + offsetY);
+            }
+        }
+        evict();
+    }
+
+    /**
+     * Marks the chunk containing the specified cell for re-rendering.
+     *
+     * @param col column of the cell
+     * @param row row of the cell
+     */
+    public void invalidateCell(int col, int row) {
+        if (col < 0 || col >= width || row < 0 || row >= height) { return; }
+        valid[(row / CHUNK_TILES) * chunksX + col / CHUNK_TILES] = false;
+    }
+
+    /**
+     * Marks every chunk for re-rendering.
+     */
+    public void invalidateAll() {
+        for (int i = 0; i < valid.length; i++) { valid[i] = false; }
+    }
+
+    /**
+     * Releases all chunk images.
+     */
+    public void clear() {
+        for (int i = 0; i < chunks.length; i++) { release(i); }
+    }
+
+    private void renderChunk(GraphicsConfiguration gc, int cx, int cy) {
+        int index = cy * chunksX + cx;
+        int firstCol = cx * CHUNK_TILES;
+        int firstRow = cy * CHUNK_TILES;
+        int cols = Math.min(CHUNK_TILES, width - firstCol);
+        int rows = Math.min(CHUNK_TILES, height - firstRow);
+
+        long mask = getCellMask(firstCol, firstRow, cols, rows);
+        cellMasks[index] = mask;
+        if (mask == 0) {
+            release(index);
+            valid[index] = true;
+            return;
+        }
+
+        BufferedImage chunk = chunks[index];
+        if (chunk == null) {
+            int chunkWidth = cols * GamePanel.TILE_SIZE;
+            int chunkHeight = rows * GamePanel.TILE_SIZE;
+            boolean screen = gc != null && gc.getDevice().getType() != GraphicsDevice.TYPE_IMAGE_BUFFER;
+            chunk = screen ? gc.createCompatibleImage(chunkWidth, chunkHeight, Transparency.TRANSLUCENT)
+                : new BufferedImage(chunkWidth, chunkHeight, BufferedImage.TYPE_INT_ARGB_PRE);
+            chunks[index] = chunk;
+            linkFirst(index);
+            usedBytes += (long) chunkWidth * chunkHeight * BYTES_PER_PIXEL;
+        }
+
+        Graphics2D g2 = chunk.createGraphics();
+        boolean complete = true;
+        try {
+            g2.setComposite(AlphaComposite.Clear);
+            g2.fillRect(0, 0, chunk.getWidth(), chunk.getHeight());
+            g2.setComposite(AlphaComposite.SrcOver);
+            for (TileLayer layer : layers) {
+                long start = FrameProfiler.start();
+                for (int row = 0; row < rows; row++) {
+                    for (int col = 0; col < cols; col++) {
+                        Tile t = layer.getTile(firstCol + col, firstRow + row);
+                        if (t == null) { continue; }
+                        complete &= t.draw(g2, col * GamePanel.TILE_SIZE, row * GamePanel.TILE_SIZE);
+                    }
+                }
+                FrameProfiler.stop(layer.getProfilerPhase(), start);
+            }
+        } finally { g2.dispose(); }
+
+        // Tiles whose images are still being produced are drawn again on the next frame
+        valid[index] = complete;
+    }
+
+    /**
+     * Draws the cells of a chunk that have tiles, one run of neighbouring cells at a time, so the
+     * transparent parts of the chunk are not blended onto the screen.
+     */
+    private void blitChunk(Graphics2D g2, int index, int x, int y) {
+        BufferedImage chunk = chunks[index];
+        long mask = cellMasks[index];
+        for (int row = 0; row < CHUNK_TILES; row++) {
+            int rowMask = (int) (mask >>> (row * CHUNK_TILES)) & 0xFF;
+            while (rowMask != 0) {
+                int first = Integer.numberOfTrailingZeros(rowMask);
+                int last = Integer.numberOfTrailingZeros(~(rowMask >>> first)) + first;
+                rowMask &= -1 << last;
+
+                int sx1 = first * GamePanel.TILE_SIZE;
+                int sx2 = last * GamePanel.TILE_SIZE;
+                int sy1 = row * GamePanel.TILE_SIZE;
+                int sy2 = sy1 + GamePanel.TILE_SIZE;
+                g2.drawImage(chunk, x + sx1, y + sy1, x + sx2, y + sy2, sx1, sy1, sx2, sy2, null);
+            }
+        }
+    }
+
+    private long getCellMask(int firstCol, int firstRow, int cols, int rows) {
+        long mask = 0L;
+        for (TileLayer layer : layers) {
+            for (int row = 0; row < rows; row++) {
+                for (int col = 0; col < cols; col++) {
+                    if (layer.getTile(firstCol + col, firstRow + row) != null) {
+                        mask |= 1L << (row * CHUNK_TILES + col);
+                    }
+                }
+            }
+        }
+        return mask;
+    }
+
+    private void evict() {
+        while (usedBytes > budgetBytes && tail != NONE) {
+            // Everything left is on screen, keep it even if over budget
+            if (lastUsed[tail] == frame) { return; }
+            release(tail);
+        }
+    }
+
+    private void release(int index) {
+        BufferedImage chunk = chunks[index];
+        if (chunk == null) { return; }
+        usedBytes -= (long) chunk.getWidth() * chunk.getHeight() * BYTES_PER_PIXEL;
+        chunk.flush();
+        chunks[index] = null;
+        valid[index] = false;
+        unlink(index);
+    }
+
+    private void linkFirst(int index) {
+        prev[index] = NONE;
+        next[index] = head;
+        if (head != NONE) { prev[head] = index; }
+        head = index;
+        if (tail == NONE) { tail = index; }
+    }
+
+    private void unlink(int index) {
+        if (prev[index] != NONE) { next[prev[index]] = next[index]; }
+        else { head = next[index]; }
+        if (next[index] != NONE) { prev[next[index]] = prev[index]; }
+        else { tail = prev[index]; }
+    }
+}
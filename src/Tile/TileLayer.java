@@ -1,40 +1,124 @@
 package Tile;
 
+import Game.GamePanel;
+
 /**
  * TileLayer.java <hr>
  * Represents a layer of tiles in a tile-based map. This class facilitates the superimposition
- * of tiles on top of each other. Tiles are stored in a 2D array. Multiple Tiles can then be
- * drawn by using separate TileLayers.
+ * of tiles on top of each other. Multiple Tiles can then be drawn by using separate TileLayers.
+ * <p>
+ * Cells are stored as global tile IDs (GIDs) in a single row-major array, and a GID is looked up
+ * in a table of {@link Tile}s shared by every cell (and layer) that uses it. GID 0 is an empty
+ * cell. The pixel position of a cell is derived from its index.
+ * <p>
+ * Each layer has a name and a bitmask of {@link LayerProperty} flags deciding how the tile map
+ * draws it and whether it takes part in collisions and entity spawning.
+ * <p>
+ * Layers of infinite maps keep their cells in chunks instead (see {@link ChunkedTileLayer}).
  */
 
 public class TileLayer {
     
-    private Tile[][] tiles;
-    private int width;
-    private int height;
+    private final String name;
+    private final int flags;
+    private final int[] gids;
+    private final Tile[] tileTable;
+    private final int width;
+    private final int height;
+    private int profilerPhase;
+
+    /**
+     * Creates an empty layer.
+     * 
+     * @param name      name of the layer
+     * @param width     width of the layer in tiles
+     * @param height    height of the layer in tiles
+     * @param tileTable tiles indexed by GID; index 0 is unused
+     * @param flags     bitmask of {@link LayerProperty} flags
+     */
+    public TileLayer(String name, int width, int height, Tile[] tileTable, int flags) {
+        this(name, width, height, tileTable, flags, new int[width * height]);
+    }
 
-    public TileLayer(int width, int height) {
+    /**
+     * Creates a layer holding the specified cells.
+     *
+     * @param name      name of the layer
+     * @param width     width of the layer in tiles
+     * @param height    height of the layer in tiles
+     * @param tileTable tiles indexed by GID; index 0 is unused
+     * @param flags     bitmask of {@link LayerProperty} flags
+     * @param gids      row-major GIDs of the cells, which the layer takes ownership of, or null
+     *                  for a subclass that stores the cells itself and overrides the cell accessors
+     */
+    public TileLayer(String name, int width, int height, Tile[] tileTable, int flags, int[] gids) {
+        if (gids != null && gids.length != width * height) {
+            throw new IllegalArgumentException("Layer '" + name + "' has " + gids.length +
+                " cells, expected " + width * height);
+        }
+        this.name = name;
+        this.flags = flags;
         this.width = width;
         this.height = height;
-        tiles = new Tile[width][height];
+        this.tileTable = tileTable;
+        this.gids = gids;
     }
 
 
     /* Accessors */
 
+    public String getName() { return name; }
+
+    public int getFlags() { return flags; }
+
+    public boolean hasProperty(LayerProperty property) { return property.isSet(flags); }
+
     public int getWidth() { return width; }
 
     public int getHeight() { return height; }
 
-    public Tile getTile(int x, int y) { return tiles[x][y]; }
+    public Tile getTile(int x, int y) { return tileTable[gids[y * width + x]]; }
+
+    /**
+     * Gets the GID of the tile in the specified cell.
+     * 
+     * @param x column of the cell
+     * @param y row of the cell
+     * @return  GID of the tile, or 0 if the cell is empty
+     */
+    public int getGid(int x, int y) { return gids[y * width + x]; }
+
+    /**
+     * Gets the row-major index of the specified cell.
+     */
+    public int getIndex(int x, int y) { return y * width + x; }
+
+    /**
+     * Gets the x coordinate (in pixels) of the cell with the specified index.
+     */
+    public int getPixelX(int index) { return (index % width) * GamePanel.TILE_SIZE; }
+
+    /**
+     * Gets the y coordinate (in pixels) of the cell with the specified index.
+     */
+    public int getPixelY(int index) { return (index / width) * GamePanel.TILE_SIZE; }
+
+    public Tile[] getTileTable() { return tileTable; }
+
+    public int getProfilerPhase() { return profilerPhase; }
 
 
     /* Mutators */
 
-    public void setWidth(int width) { this.width = width; }
-    
-    public void setHeight(int height) { this.height = height; }
-    
-    public void setTile(int x, int y, Tile tile) { tiles[x][y] = tile; }
+    /**
+     * Sets the GID of the tile in the specified cell.
+     * 
+     * @param x   column of the cell
+     * @param y   row of the cell
+     * @param gid GID of the tile, or 0 to empty the cell
+     */
+    public void setGid(int x, int y, int gid) { gids[y * width + x] = gid; }
+
+    public void setProfilerPhase(int profilerPhase) { this.profilerPhase = profilerPhase; }
     
 }
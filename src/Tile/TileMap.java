@@ -11,7 +11,10 @@ import java.awt.Color;
 import java.awt.Dimension;
 import java.awt.Graphics2D;
 import java.awt.Image;
+import java.awt.Rectangle;
+import java.awt.Shape;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 
 import Game.*;
@@ -20,23 +23,97 @@ import Managers.*;
 
 public class TileMap {
 
+    private static final Movement[] MOVEMENTS = Movement.values();
+    private static final int TILE_CHUNKS_PHASE = FrameProfiler.registerPhase("tile chunks");
+    private static final int ENTITIES_PHASE = FrameProfiler.registerPhase("entities");
+    /** Size of the HUD in the top right corner of the screen */
+    private static final int HUD_WIDTH = 52;
+    private static final int HUD_HEIGHT = 90;
+
     private BackgroundManager bgManager;
     private HashMap<String, TileLayer> tileLayers;
+    /** Layers in the order they were added, which is the order they are drawn in */
+    private TileLayer[] layers;
+    /**
+     * Passes drawing the visible layers, bottom first. Each pass is either a chunk cache for a run
+     * of neighbouring static layers, a single layer drawn tile by tile, or the entities spawned
+     * by a layer. Built on first draw.
+     */
+    private TileChunkCache[] passCaches;
+    private TileLayer[] passLayers;
+    /** Index of the layer whose entities each pass draws, or -1 for a pass drawing tiles */
+    private int[] passEntityLayers;
+    /** Layers whose tiles are drawn by the entities they spawned instead, or null until spawned */
+    private boolean[] entityLayers;
+    /** Residency of the chunks of an infinite map's layers, or null for a finite map */
+    private ChunkResidency chunkResidency;
     private Dimension screenSize;
     private Dimension mapSize;
     private int tilemapOffsetY;
-    private ArrayList<Entity> entities;
-    private GamePanel panel;
+    private EntityStore entities;
+    /** Solid cells of a finite map, or null for an infinite map */
+    private CollisionMap collisionMap;
+    /** {@link TileProperty} flags of all tiles in each cell of a finite map, in row-major order */
+    private int[] cellFlags;
+    /** Cell flags of an infinite map, held per chunk, or null for a finite map */
+    private ChunkedCellFlags chunkFlags;
+    /** Layer and cell index of every cell that spawns an entity, or null until found */
+    private int[] spawns;
+    private GameContext context;
     private Player player;
+    /** Parts of the screen changed since the last frame drawn by {@link #drawChanges} */
+    private DirtyRegion dirtyRegion;
+    /* Camera, background moves, player image and HUD values of that frame */
+    private int drawnOffsetX;
+    private int drawnOffsetY;
+    private int drawnBackgroundMoves;
+    private TextureAtlas.Region drawnPlayerRegion;
+    private int drawnPlayerX;
+    private int drawnPlayerY;
+    private int drawnKeys;
+    private int drawnCoins;
+    private int drawnHealth;
+    /** Bounding box of the rectangles of the dirty region being drawn */
+    private final Rectangle dirtyBounds = new Rectangle();
+    /* Player position, camera, visible entities and HUD text of the frame being drawn */
+    private int framePlayerX;
+    private int framePlayerY;
+    private int frameOffsetX;
+    private int frameOffsetY;
+    private int frameEntityCount;
+    private String keysText;
+    private String coinsText;
+    private String healthText;
+
+    public TileMap(GameContext context, Player player, BackgroundManager bgManager, int width, 
+        int height) {
+        this(context, player, bgManager, width, height, 0);
+    }
 
-    public TileMap(GamePanel panel, Player player, BackgroundManager bgManager, int width, int height) {
-        this.panel = panel;
-        screenSize = new Dimension(panel.getSize().width, panel.getSize().height);
+    /**
+     * Creates an empty tile map.
+     * 
+     * @param chunkSize width and height of the chunks of an infinite map's layers, or 0 for a 
+     *                  finite map. The cell flags of an infinite map are held per chunk and 
+     *                  built when first needed, instead of for the whole world up front.
+     */
+    public TileMap(GameContext context, Player player, BackgroundManager bgManager, int width, 
+        int height, int chunkSize) {
+        this.context = context;
+        screenSize = new Dimension(context.getWidth(), context.getHeight());
         mapSize = new Dimension(width, height);
         tilemapOffsetY = Math.max(0, screenSize.height - tilesToPixels(mapSize.height));
         System.out.println("[TILEMAP] tilemapOffsetY: " + tilemapOffsetY);
-        entities = new ArrayList<Entity>();
+        dirtyRegion = new DirtyRegion(screenSize.width, screenSize.height);
+        entities = new EntityStore(width, height);
+        entities.setListener(this::entityUpdated);
         tileLayers = new HashMap<String, TileLayer>();
+        layers = new TileLayer[0];
+        if (chunkSize > 0) { chunkFlags = new ChunkedCellFlags(width, height, chunkSize); }
+        else {
+            collisionMap = new CollisionMap(width, height);
+            cellFlags = new int[width * height];
+        }
         this.player = player;
         this.bgManager = bgManager;
     }
@@ -65,15 +142,21 @@ public class TileMap {
      */
     public int getHeight() { return mapSize.height; }
 
+    public Player getPlayer() { return player; }
+
+
+    public int getTileMapOffsetY() { return getTileMapOffsetY(player.getY()); }
+
+    public int getTileMapOffsetX() { return getTileMapOffsetX(player.getX()); }
 
-    public int getTileMapOffsetY() { 
-        int offsetY = screenSize.height / 2 - Math.round(player.getY()) - player.getHeight();
+    private int getTileMapOffsetY(int playerY) { 
+        int offsetY = screenSize.height / 2 - playerY - player.getHeight();
         offsetY = Math.min(offsetY, 0);
         return Math.max(offsetY, screenSize.height - tilesToPixels(mapSize.height));
     }
 
-    public int getTileMapOffsetX() {
-        int offsetX = screenSize.width / 2 - Math.round(player.getX()) - player.getWidth();
+    private int getTileMapOffsetX(int playerX) {
+        int offsetX = screenSize.width / 2 - playerX - player.getWidth();
         offsetX = Math.min(offsetX, 0);
         return Math.max(offsetX, screenSize.width - tilesToPixels(mapSize.width));
     }
@@ -89,7 +172,7 @@ public class TileMap {
     public ArrayList<Tile> getTiles(int col, int row) {
         if (col < 0 || col >= mapSize.width || row < 0 || row >= mapSize.height) { return null; }
         ArrayList<Tile> tiles = new ArrayList<Tile>();
-        for (TileLayer layer : tileLayers.values()) {
+        for (TileLayer layer : layers) {
             if (layer.getTile(col, row) == null) { continue; } 
             tiles.add(layer.getTile(col, row));
         }
@@ -104,6 +187,108 @@ public class TileMap {
      */
     public TileLayer getLayer(String layerName) { return tileLayers.get(layerName); }
 
+    /**
+     * Gets the number of tile layers.
+     */
+    public int getLayerCount() { return layers.length; }
+
+    /**
+     * Gets the tile layer at the specified position in the draw order.
+     * 
+     * @param index The position of the layer, 0 being the bottom layer
+     * @return      The layer object
+     */
+    public TileLayer getLayer(int index) { return layers[index]; }
+
+    /**
+     * Gets the combined {@link TileProperty} flags of every tile in the specified cell.
+     * 
+     * @param col The column of the cell
+     * @param row The row of the cell
+     * @return    Bitmask of the flags, or 0 if the cell is empty or out of bounds
+     */
+    public int getCellFlags(int col, int row) {
+        if (col < 0 || col >= mapSize.width || row < 0 || row >= mapSize.height) { return 0; }
+        if (cellFlags != null) { return cellFlags[row * mapSize.width + col]; }
+        int chunk = chunkFlags.getChunk(col, row);
+        if (!chunkFlags.isBuilt(chunk)) { buildChunkFlags(chunk); }
+        return chunkFlags.get(col, row);
+    }
+
+    /**
+     * Checks if any tile at the specified coordinates has the specified property. Never allocates.
+     * 
+     * @param x        The x coordinate to check
+     * @param y        The y coordinate to check
+     * @param property The property to check for
+     * @return         {@code true} if the property is set, {@code false} if it is not or the 
+     *                 location is out of bounds
+     */
+    public boolean hasPropertyAt(int x, int y, TileProperty property) {
+        if (x < 0 || y < tilemapOffsetY) { return false; }
+        return property.isSet(getCellFlags(pixelsToTiles(x), pixelsToTiles(y)));
+    }
+
+    /**
+     * Gets the cells whose tiles spawn entities, in the order the entities are created: row by
+     * row, and bottom layer first within a cell. Found on first call by scanning every layer that
+     * has {@link LayerProperty#ENTITY_SPAWN}, unless they were set by {@link #setSpawns(int[])}.
+     * The chunks of an infinite map are scanned without making them resident, and empty chunks
+     * are skipped.
+     * 
+     * @return pairs of layer index (in the draw order) and row-major cell index
+     */
+    public int[] getSpawns() {
+        if (spawns != null) { return spawns; }
+
+        // Each spawn is found as cell index * layer count + layer index, and sorted by that
+        long[] found = new long[16];
+        int count = 0;
+        for (int i = 0; i < layers.length; i++) {
+            if (!layers[i].hasProperty(LayerProperty.ENTITY_SPAWN)) { continue; }
+            if (!(layers[i] instanceof ChunkedTileLayer)) {
+                TileLayer layer = layers[i];
+                for (int cell = 0; cell < mapSize.width * mapSize.height; cell++) {
+                    if (layer.getTile(cell % mapSize.width, cell / mapSize.width) == null) { continue; }
+                    if (count == found.length) { found = Arrays.copyOf(found, count * 2); }
+                    found[count++] = (long) cell * layers.length + i;
+                }
+                continue;
+            }
+
+            ChunkedTileLayer layer = (ChunkedTileLayer) layers[i];
+            int size = layer.getChunkSize();
+            for (int chunk = 0; chunk < layer.getChunkCount(); chunk++) {
+                int[] gids = layer.peekCells(chunk);
+                if (gids == null) { continue; }
+                int col = (chunk % layer.getChunksX()) * size;
+                int row = (chunk / layer.getChunksX()) * size;
+                for (int c = 0; c < gids.length; c++) {
+                    if (gids[c] == 0) { continue; }
+                    if (count == found.length) { found = Arrays.copyOf(found, count * 2); }
+                    int cell = (row + c / size) * mapSize.width + col + c % size;
+                    found[count++] = (long) cell * layers.length + i;
+                }
+            }
+        }
+
+        Arrays.sort(found, 0, count);
+        spawns = new int[count * 2];
+        for (int k = 0; k < count; k++) {
+            spawns[k * 2] = (int) (found[k] % layers.length);
+            spawns[k * 2 + 1] = (int) (found[k] / layers.length);
+        }
+        return spawns;
+    }
+
+    /**
+     * Gets the bitmap of solid cells, built from the solid tiles of every layer.
+     * 
+     * @return the collision map, or null for an infinite map, whose solid cells are found from
+     *         its cell flags
+     */
+    public CollisionMap getCollisionMap() { return collisionMap; }
+
     /**
      * Gets the tile at the specified location (in number of tiles) 
      * from the specified layer.
@@ -140,7 +325,9 @@ public class TileMap {
     public void setPlayer(Player player) {
         player.setPosition(GamePanel.TILE_SIZE * 4, tilemapOffsetY + GamePanel.TILE_SIZE);
         player.setTileMap(this);
+        player.savePreviousPosition();
         this.player = player;
+        dirtyRegion.addAll();
         System.out.println("[TILEMAP] Player spawned at " + player.getX() + ", " + player.getY());
     }
 
@@ -151,64 +338,130 @@ public class TileMap {
      */
     public void setBackgroundManager(BackgroundManager bgManager) {
         this.bgManager = bgManager;
+        dirtyRegion.addAll();
     }
 
+    /**
+     * Sets the cells that spawn entities, as found by {@link #getSpawns()} when the map was
+     * compiled, so they do not have to be found again. Adding or changing a layer discards them.
+     * 
+     * @param spawns pairs of layer index and row-major cell index
+     */
+    public void setSpawns(int[] spawns) { this.spawns = spawns; }
+
     /**
      * Set up all the enities particular to this tile map (e.g. enemies, etc.)
      */
     public void setupEntities() {
-        TileLayer coinLayer = tileLayers.get("Coin");
-        TileLayer doorLayer = tileLayers.get("Door");
-        TileLayer invisibePotionLayer = tileLayers.get("InvisiblePotion");
-        TileLayer dangerObjectLayer = tileLayers.get("DangerObject");
-        TileLayer lifeLayer = tileLayers.get("Life");
-        TileLayer keyLayer = tileLayers.get("Key");
-
-        for (int y = 0; y < mapSize.height; y++) {
-            for (int x = 0; x < mapSize.width; x++) {
-                if (coinLayer != null){
-                    Tile t = coinLayer.getTile(x, y);
-                    if (t != null) { entities.add(new Coin(t, player)); }
-                }
+        int[] spawns = getSpawns();
+        entityLayers = new boolean[layers.length];
+        for (int i = 0; i < spawns.length; i += 2) {
+            TileLayer layer = layers[spawns[i]];
+            int x = spawns[i + 1] % mapSize.width;
+            int y = spawns[i + 1] / mapSize.width;
+            Entity e = createEntity(layer.getName(), layer.getTile(x, y), tilesToPixels(x), 
+                tilesToPixels(y));
+            if (e == null) { continue; }
 
-                if (doorLayer != null) { 
-                    Tile t = doorLayer.getTile(x, y);
-                    if (t != null) { entities.add(new Door(t, player)); }
-                }
+            // the entity is drawn in place of its tile, and disappears with it
+            entities.add(e, spawns[i], layer.hasProperty(LayerProperty.VISIBLE));
+            entityLayers[spawns[i]] = true;
+        }
+        clearRenderPasses();
+    }
 
-                if (dangerObjectLayer!=null){
-                    Tile t = dangerObjectLayer.getTile(x, y);
-                    if (t != null) { 
-                        entities.add(new DangerObject(t, player));
-                    }
-                }
+    /**
+     * Adds an entity to this tile map, drawn above every tile layer. Entities added earlier are 
+     * checked against the player first.
+     * 
+     * @param e the entity
+     */
+    public void addEntity(Entity e) {
+        entities.add(e, layers.length, true);
+        markEntityDirty(entities.size() - 1);
+    }
 
-                if (invisibePotionLayer != null){
-                    Tile t = invisibePotionLayer.getTile(x, y);
-                    if (t != null) { entities.add(new InvisiblePotion(t, player)); }
-                }
+    /**
+     * Creates the entity spawned by a tile of the layer with the specified name.
+     * 
+     * @return The entity, or null if the layer does not spawn a known entity
+     */
+    private Entity createEntity(String layerName, Tile t, int px, int py) {
+        switch (layerName) {
+            case "Coin": return new Coin(t, px, py, player);
+            case "Door": return new Door(t, px, py, player);
+            case "DangerObject": return new DangerObject(t, px, py, player);
+            case "InvisiblePotion": return new InvisiblePotion(t, px, py, player);
+            case "Life": return new Life(t, px, py, player);
+            case "Key": return new Key(t, px, py, player);
+            default: return null;
+        }
+    }
 
-                if (lifeLayer != null){
-                    Tile t = lifeLayer.getTile(x, y);
-                    if (t != null) { entities.add(new Life(t, player)); }
-                }
+    /**
+     * Adds a new tile layer on top of the existing layers. A layer with the same name as an
+     * existing layer replaces it, keeping its place in the draw order.
+     * 
+     * @param layer The tile layer object
+     */
+    public void addTileLayer(TileLayer layer) { 
+        layer.setProfilerPhase(FrameProfiler.registerPhase("layer " + layer.getName()));
+        if (layer instanceof ChunkedTileLayer) { 
+            chunkResidency = ((ChunkedTileLayer) layer).getResidency(); 
+            chunkResidency.setListener(this::chunkReleased);
+        }
+        TileLayer replaced = tileLayers.put(layer.getName(), layer); 
+        if (replaced != null) { 
+            layers[Arrays.asList(layers).indexOf(replaced)] = layer; 
+        } else {
+            layers = Arrays.copyOf(layers, layers.length + 1);
+            layers[layers.length - 1] = layer;
+        }
+        clearRenderPasses();
+        spawns = null;
+        if (replaced == null && !layer.hasProperty(LayerProperty.COLLIDABLE)) { return; }
 
-                if (keyLayer != null){
-                    Tile t = keyLayer.getTile(x, y);
-                    if (t != null) { entities.add(new Key(t, player)); }
-                }
+        // The flags of an infinite map are built again from its layers when next needed
+        if (chunkFlags != null) { 
+            chunkFlags.clear(); 
+            return;
+        }
+
+        // Add the layer's tile flags to the cell flags and collision map
+        for (int row = 0; row < layer.getHeight(); row++) {
+            for (int col = 0; col < layer.getWidth(); col++) {
+                if (replaced != null) { updateCell(col, row); continue; }
+                Tile t = layer.getTile(col, row);
+                if (t == null) { continue; }
+                cellFlags[row * mapSize.width + col] |= t.getFlags();
+                if (t.isSolid()) { collisionMap.setSolid(col, row, true); }
             }
         }
-        return;
     }
 
     /**
-     * Adds a new tile layer with the specified name
+     * Changes a single tile of the specified layer and updates the cell flags, collision map and
+     * cached chunk to match.
      * 
-     * @param name  The name of the tile layer
-     * @param layer The tile layer object
+     * @param layerName The name of the layer
+     * @param col       The column of the tile
+     * @param row       The row of the tile
+     * @param gid       GID of the new tile, or 0 to remove the tile
      */
-    public void addTileLayer(String name, TileLayer layer) { tileLayers.put(name, layer); }
+    public void setTile(String layerName, int col, int row, int gid) {
+        TileLayer layer = tileLayers.get(layerName);
+        if (layer == null) { return; }
+        if (col < 0 || col >= mapSize.width || row < 0 || row >= mapSize.height) { return; }
+        markTileDirty(layer.getTile(col, row), col, row);
+        layer.setGid(col, row, gid);
+        markTileDirty(layer.getTile(col, row), col, row);
+        updateCell(col, row);
+        spawns = null;
+        if (passCaches == null) { return; }
+        for (TileChunkCache cache : passCaches) { 
+            if (cache != null) { cache.invalidateCell(col, row); } 
+        }
+    }
 
     /**
      * Class method to convert a pixel position to a tile position.
@@ -224,7 +477,7 @@ public class TileMap {
      * @param pixels The pixel position to convert
      * @return       The tile position
      */
-    public static int pixelsToTiles(int pixels) { return pixelsToTiles((float) pixels); }
+    public static int pixelsToTiles(int pixels) { return Math.floorDiv(pixels, GamePanel.TILE_SIZE); }
 
     /** 
      * Class method to get the number of pixels occupied by a specified number of tiles.
@@ -234,6 +487,42 @@ public class TileMap {
      */
     public static int tilesToPixels(int numTiles) { return numTiles * GamePanel.TILE_SIZE; }
     
+    /**
+     * Checks if the specified cell (in number of tiles) is solid.
+     * 
+     * @param col The column of the cell
+     * @param row The row of the cell
+     * @return    {@code true} if the cell is solid, {@code false} if it is not or is out of bounds
+     */
+    public boolean isSolidCell(int col, int row) {
+        if (collisionMap != null) { return collisionMap.isSolid(col, row); }
+        return TileProperty.SOLID.isSet(getCellFlags(col, row));
+    }
+
+    /**
+     * Checks if the specified coordinates are inside a solid tile. Never allocates.
+     * 
+     * @param x The x coordinate to check
+     * @param y The y coordinate to check
+     * @return  {@code true} if the location is solid, {@code false} if it is not or is out of bounds
+     */
+    public boolean isSolidAt(int x, int y) {
+        if (x < 0 || y < tilemapOffsetY) { return false; }
+        return isSolidCell(pixelsToTiles(x), pixelsToTiles(y));
+    }
+
+    /**
+     * Gets the row-major index of the solid cell at the specified coordinates. Never allocates.
+     * 
+     * @param x The x coordinate to check
+     * @param y The y coordinate to check
+     * @return  Index of the solid cell, or -1 if the location is not solid or is out of bounds
+     */
+    public int getSolidCellAt(int x, int y) {
+        if (!isSolidAt(x, y)) { return -1; }
+        return pixelsToTiles(y) * mapSize.width + pixelsToTiles(x);
+    }
+
     /**
      * Checks if the specified coordinates collide with a tile.
      * 
@@ -243,12 +532,8 @@ public class TileMap {
      *          is out of bounds.
      */
     public Tile collidesWithTileCoords(int x, int y) {
-        ArrayList<Tile> tiles = getTilesAtLocation(x, y);
-        if (tiles == null || tiles.size() == 0) { return null; }
-        for (Tile t : tiles) {
-            if (t != null && t.isSolid()) { return t; } 
-        }
-        return null;
+        if (!isSolidAt(x, y)) { return null; }
+        return getSolidTile(pixelsToTiles(x), pixelsToTiles(y));
     }
 
     /**
@@ -260,212 +545,523 @@ public class TileMap {
      *            is out of bounds.
      */
     public Tile collidesWithTile(int row, int col) {
-        ArrayList<Tile> tiles = getTiles(row, col);
-        if (tiles == null || tiles.size() == 0) { return null; }
-        for (Tile t : tiles) { if (t != null && t.isSolid()) { return t; } }
-        return null;
+        if (!isSolidCell(col, row)) { return null; }
+        return getSolidTile(col, row);
     }
 
-    public Tile collidesWithTileDown(int x, int y) {
-        ArrayList<Tile> tiles = getTilesAtLocation(x, y + 1);
-        if (tiles == null || tiles.size() == 0) { return null; }
-        for (Tile t : tiles) { if (t.isSolid()) { return t; } }
-        return null;
-    }
+    public Tile collidesWithTileDown(int x, int y) { return collidesWithTileCoords(x, y + 1); }
 
     public Tile collidesWithTileDown(Entity e) {
-        ArrayList<Tile> tiles = getTilesAtLocation(e.getX(), e.getY() + e.getHeight() + 5);
-        if (tiles == null || tiles.size() == 0) { return null; }
-        for (Tile t : tiles) { if (t.isSolid()) { return t; } }
-        return null;   
+        return collidesWithTileCoords(e.getX(), e.getY() + e.getHeight() + 5);
     }
 
-    public Tile collidesWithTileUp(int x, int y) {
-        ArrayList<Tile> tiles = getTilesAtLocation(x, y - 1);
-        if (tiles == null || tiles.size() == 0) { return null; }
-        for (Tile t : tiles) { if (t.isSolid()) { return t; } }
-        return null;
-    }
+    public Tile collidesWithTileUp(int x, int y) { return collidesWithTileCoords(x, y - 1); }
 
     public Tile collidesWithTileUp(Entity e) {
-        ArrayList<Tile> tiles = getTilesAtLocation(e.getX(), e.getY() - e.getHeight()/2);
-        if (tiles == null || tiles.size() == 0) { return null; }
-        for (Tile t : tiles) { if (t.isSolid()) { return t; } }
-        return null;
+        return collidesWithTileCoords(e.getX(), e.getY() - e.getHeight()/2);
     }
- 
+
     /**
-     * Draws the tile map scene to the screen. The BackgroundManager draws its background
-     * layers first, then the tile layers and finally the entities.
-     * 
-     * @param g2 The graphics context to draw to
+     * Checks if any cell overlapped by an entity's bounding rectangle has the specified property.
      */
-    public void draw(Graphics2D g2) {
-        bgManager.draw(g2);
-        
-        // draw the visible tiles
-        int firstTileX = pixelsToTiles(-getTileMapOffsetX());
-        int lastTileX = firstTileX + pixelsToTiles(screenSize.width);
-        int firstTileY = pixelsToTiles(-getTileMapOffsetY());
-        int lastTileY = firstTileY + pixelsToTiles(screenSize.height) + 1;
-        TileLayer terrain = getLayer("Terrain");
-        TileLayer decoration1 = getLayer("Decoration 1");
-        TileLayer decoration2 = getLayer("Decoration 2");
-        TileLayer dangerObject = getLayer("DangerObject");
-        TileLayer door = getLayer("Door");
-        TileLayer key = getLayer("Key");
-        TileLayer coin = getLayer("Coin");
-        TileLayer ladder = getLayer("Ladder");
-
-        // draw terrain layer
-        if (terrain == null) {
-            throw new RuntimeException("Terrain layer not found");
-        }
-        renderTileLayer(g2, terrain, firstTileX, lastTileX, firstTileY, lastTileY);
-        
-        // draw decoration layers
-        if (decoration1 != null) { 
-            renderTileLayer(g2, decoration1, firstTileX, lastTileX, firstTileY, lastTileY); 
+    private boolean isTouching(Entity e, TileProperty property) {
+        if (e.getWidth() <= 0 || e.getHeight() <= 0) { return false; }
+        int lastCol = pixelsToTiles(e.getX() + e.getWidth() - 1);
+        int lastRow = pixelsToTiles(e.getY() + e.getHeight() - 1);
+        for (int row = pixelsToTiles(e.getY()); row <= lastRow; row++) {
+            for (int col = pixelsToTiles(e.getX()); col <= lastCol; col++) {
+                if (property.isSet(getCellFlags(col, row))) { return true; }
+            }
         }
-        if (decoration2 != null) { 
-            renderTileLayer(g2, decoration2, firstTileX, lastTileX, firstTileY, lastTileY); 
+        return false;
+    }
+
+    /**
+     * Gets the first solid tile in the specified cell across the collidable layers, bottom layer 
+     * first.
+     */
+    private Tile getSolidTile(int col, int row) {
+        for (TileLayer layer : layers) {
+            if (!layer.hasProperty(LayerProperty.COLLIDABLE)) { continue; }
+            Tile t = layer.getTile(col, row);
+            if (t != null && t.isSolid()) { return t; }
         }
+        return null;
+    }
 
-        // draw ladder layer
-        if (ladder != null) {
-            renderTileLayer(g2, ladder, firstTileX, lastTileX, firstTileY, lastTileY);
+    /**
+     * Recomputes the flags of the specified cell, and whether it is solid, from the collidable 
+     * layers. The cell of an infinite map is left alone if the flags of its chunk are not built.
+     */
+    private void updateCell(int col, int row) {
+        if (chunkFlags != null && !chunkFlags.isBuilt(chunkFlags.getChunk(col, row))) { return; }
+        int flags = 0;
+        for (TileLayer layer : layers) {
+            if (!layer.hasProperty(LayerProperty.COLLIDABLE)) { continue; }
+            Tile t = layer.getTile(col, row);
+            if (t != null) { flags |= t.getFlags(); }
         }
+        if (chunkFlags != null) { 
+            chunkFlags.set(col, row, flags); 
+            return;
+        }
+        cellFlags[row * mapSize.width + col] = flags;
+        collisionMap.setSolid(col, row, TileProperty.SOLID.isSet(flags));
+    }
 
-        // draw door layer
-        if (door != null) {
-            renderTileLayer(g2, door, firstTileX, lastTileX, firstTileY, lastTileY);
+    /**
+     * Builds the flags of a chunk of an infinite map from the same chunk of every collidable 
+     * layer, making those chunks resident, so the flags are dropped again with them.
+     */
+    private void buildChunkFlags(int chunk) {
+        int size = chunkFlags.getChunkSize();
+        int col = (chunk % (mapSize.width / size)) * size;
+        int row = (chunk / (mapSize.width / size)) * size;
+        int[] flags = null;
+        for (TileLayer layer : layers) {
+            if (!layer.hasProperty(LayerProperty.COLLIDABLE)) { continue; }
+            if (!(layer instanceof ChunkedTileLayer)) {
+                for (int c = 0; c < size * size; c++) {
+                    Tile t = layer.getTile(col + c % size, row + c / size);
+                    if (t == null) { continue; }
+                    if (flags == null) { flags = new int[size * size]; }
+                    flags[c] |= t.getFlags();
+                }
+                continue;
+            }
+            int[] gids = ((ChunkedTileLayer) layer).getCells(chunk);
+            if (gids == null) { continue; }
+            Tile[] table = layer.getTileTable();
+            if (flags == null) { flags = new int[size * size]; }
+            for (int c = 0; c < gids.length; c++) {
+                if (gids[c] != 0) { flags[c] |= table[gids[c]].getFlags(); }
+            }
         }
+        chunkFlags.build(chunk, flags);
+    }
 
-        // draw key layer
-        if (key != null) {
-            renderTileLayer(g2, key, firstTileX, lastTileX, firstTileY, lastTileY);
+    /**
+     * Drops the flags built from a chunk of a collidable layer once the chunk is released.
+     */
+    private void chunkReleased(ChunkedTileLayer layer, int chunk) {
+        if (chunkFlags != null && layer.hasProperty(LayerProperty.COLLIDABLE)) { 
+            chunkFlags.release(chunk); 
         }
+    }
+ 
+    /**
+     * Draws the tile map scene to the screen at the current simulation state.
+     * 
+     * @param g2 The graphics context to draw to
+     */
+    public void draw(Graphics2D g2) { draw(g2, 1.0); }
 
-        // draw coin layer
-        if (coin != null) {
-            renderTileLayer(g2, coin, firstTileX, lastTileX, firstTileY, lastTileY);
+    /**
+     * Draws the tile map scene to the screen. The BackgroundManager draws its background
+     * layers first, then the tile layers with each layer's entities drawn in its place, and
+     * finally the player. Only the entities near the screen are visited. The player and camera
+     * are interpolated between the previous and current simulation ticks.
+     * 
+     * @param g2    The graphics context to draw to
+     * @param alpha Interpolation factor between the previous and current tick [0, 1]
+     */
+    public void draw(Graphics2D g2, double alpha) {
+        // only the part of the screen inside the clip needs drawing
+        Rectangle view = new Rectangle(0, 0, screenSize.width, screenSize.height);
+        Rectangle clip = g2.getClipBounds();
+        if (clip != null) { view = view.intersection(clip); }
+
+        prepareFrame(alpha, view);
+        paintFrame(g2, view);
+    }
+
+    /**
+     * Does the work of a frame that does not depend on the part of the screen being painted:
+     * places the camera, keeps the chunks around the screen decoded, finds the visible entities
+     * and formats the HUD. Done once per frame, however many parts of it are then painted.
+     * 
+     * @param alpha Interpolation factor between the previous and current tick [0, 1]
+     * @param area  part of the screen that will be painted
+     */
+    private void prepareFrame(double alpha, Rectangle area) {
+        // camera follows the interpolated player position
+        framePlayerX = player.getInterpolatedX(alpha);
+        framePlayerY = player.getInterpolatedY(alpha);
+        frameOffsetX = getTileMapOffsetX(framePlayerX);
+        frameOffsetY = getTileMapOffsetY(framePlayerY);
+
+        // keep the chunks of an infinite map around the screen decoded
+        if (chunkResidency != null) {
+            chunkResidency.update(Math.max(0, pixelsToTiles(-frameOffsetX)), 
+                Math.max(0, pixelsToTiles(-frameOffsetY)),
+                Math.min(mapSize.width - 1, pixelsToTiles(screenSize.width - 1 - frameOffsetX)),
+                Math.min(mapSize.height - 1, pixelsToTiles(screenSize.height - 1 - frameOffsetY)));
         }
 
-        // draw danger object layer
-        if (dangerObject != null) {
-            renderTileLayer(g2, dangerObject, firstTileX, lastTileX, firstTileY, lastTileY);
+        if (passLayers == null) { buildRenderPasses(); }
+        // entities may be drawn up to a tile wide from their position, past their bounds
+        frameEntityCount = entities.findVisible(area.x - frameOffsetX - GamePanel.TILE_SIZE, 
+            area.y - frameOffsetY - GamePanel.TILE_SIZE, area.width + GamePanel.TILE_SIZE, 
+            area.height + GamePanel.TILE_SIZE);
+
+        keysText = "X " + player.getKeys();
+        coinsText = "X " + player.getCoins();
+        healthText = "X " + player.getHealth();
+    }
+
+    /**
+     * Paints part of the frame prepared by {@link #prepareFrame}.
+     * 
+     * @param g2   The graphics context to draw to, clipped to the part painted
+     * @param area part of the screen painted, inside the area the frame was prepared for
+     */
+    private void paintFrame(Graphics2D g2, Rectangle area) {
+        long start = FrameProfiler.start();
+        bgManager.draw(g2);
+        FrameProfiler.stop(FrameProfiler.BACKGROUND, start);
+
+        // draw the visible tile layers and entities, bottom layer first
+        int nextEntity = 0;
+        for (int i = 0; i < passLayers.length; i++) {
+            if (passEntityLayers[i] >= 0) {
+                nextEntity = drawEntities(g2, nextEntity, frameEntityCount, passEntityLayers[i], 
+                    frameOffsetX, frameOffsetY);
+                continue;
+            }
+            if (passCaches[i] == null) {
+                renderTileLayer(g2, passLayers[i], frameOffsetX, frameOffsetY, area);
+                continue;
+            }
+            start = FrameProfiler.start();
+            passCaches[i].draw(g2, frameOffsetX, frameOffsetY, screenSize.width, screenSize.height);
+            FrameProfiler.stop(TILE_CHUNKS_PHASE, start);
         }
+        drawEntities(g2, nextEntity, frameEntityCount, Integer.MAX_VALUE, frameOffsetX, 
+            frameOffsetY);
 
         // draw collectibles to top right of screen
+        start = FrameProfiler.start();
         Image img = ImageManager.getImage("key");
         g2.drawImage(img, screenSize.width - 50, 0, null);
         g2.setColor(Color.WHITE);
-        g2.drawString("X " + player.getKeys(), screenSize.width - 20, 20);
+        g2.drawString(keysText, screenSize.width - 20, 20);
 
         img = ImageManager.getImage("coin");
         g2.drawImage(img, screenSize.width - 50, 30, null);
         g2.setColor(Color.WHITE);
-        g2.drawString("X " + player.getCoins(), screenSize.width - 20, 50);
+        g2.drawString(coinsText, screenSize.width - 20, 50);
 
         img = ImageManager.getImage("heart");
         g2.drawImage(img, screenSize.width - 52, 60, null);
         g2.setColor(Color.WHITE);
-        g2.drawString("X " + player.getHealth(), screenSize.width - 20, 80);
+        g2.drawString(healthText, screenSize.width - 20, 80);
+        FrameProfiler.stop(FrameProfiler.HUD, start);
 
         // draw player
-        int x = player.getX() + getTileMapOffsetX();
-        int y = player.getY() + getTileMapOffsetY();
-        player.draw(g2, x, y);
+        start = FrameProfiler.start();
+        player.draw(g2, framePlayerX + frameOffsetX, framePlayerY + frameOffsetY);
+        FrameProfiler.stop(FrameProfiler.PLAYER, start);
+    }
+
+    /**
+     * Draws the parts of the scene that changed since the last frame drawn by this method, onto a
+     * surface still holding that frame. The whole scene is drawn if the camera or the backgrounds
+     * moved; otherwise only the rectangles around the player, the HUD and the tiles and entities
+     * that changed are drawn, each with the scene clipped to it.
+     * 
+     * @param g2    The graphics context holding the last frame
+     * @param alpha Interpolation factor between the previous and current tick [0, 1]
+     * @param full  Whether to draw the whole scene regardless, e.g. as the surface was lost
+     * @return      true if anything was drawn, false if the frame is unchanged
+     */
+    public boolean drawChanges(Graphics2D g2, double alpha, boolean full) {
+        int playerX = player.getInterpolatedX(alpha);
+        int playerY = player.getInterpolatedY(alpha);
+        int offsetX = getTileMapOffsetX(playerX);
+        int offsetY = getTileMapOffsetY(playerY);
+        if (full || offsetX != drawnOffsetX || offsetY != drawnOffsetY || 
+            bgManager.getMoveCount() != drawnBackgroundMoves) {
+            dirtyRegion.addAll();
+        }
+
+        // the player moved or changed image, so redraw where it was and where it is
+        TextureAtlas.Region region = player.getCurrentRegion();
+        playerX += offsetX;
+        playerY += offsetY;
+        if (region != drawnPlayerRegion || playerX != drawnPlayerX || playerY != drawnPlayerY) {
+            if (drawnPlayerRegion != null) {
+                dirtyRegion.add(drawnPlayerX, drawnPlayerY, drawnPlayerRegion.getWidth(), 
+                    drawnPlayerRegion.getHeight());
+            }
+            dirtyRegion.add(playerX, playerY, region.getWidth(), region.getHeight());
+        }
+        if (player.getKeys() != drawnKeys || player.getCoins() != drawnCoins || 
+            player.getHealth() != drawnHealth) {
+            dirtyRegion.add(screenSize.width - HUD_WIDTH, 0, HUD_WIDTH, HUD_HEIGHT);
+        }
+        if (dirtyRegion.isEmpty()) { return false; }
+
+        if (dirtyRegion.isFull()) { draw(g2, alpha); }
+        else {
+            // prepare the frame once for all the rectangles, then paint each clipped to it
+            Rectangle r = dirtyRegion.getRectangle(0);
+            dirtyBounds.setBounds(r);
+            for (int i = 1; i < dirtyRegion.getCount(); i++) {
+                dirtyBounds.add(dirtyRegion.getRectangle(i));
+            }
+            prepareFrame(alpha, dirtyBounds);
+
+            Shape clip = g2.getClip();
+            for (int i = 0; i < dirtyRegion.getCount(); i++) {
+                g2.setClip(clip);
+                g2.clip(dirtyRegion.getRectangle(i));
+                paintFrame(g2, dirtyRegion.getRectangle(i));
+            }
+            g2.setClip(clip);
+        }
+
+        dirtyRegion.clear();
+        drawnOffsetX = offsetX;
+        drawnOffsetY = offsetY;
+        drawnBackgroundMoves = bgManager.getMoveCount();
+        drawnPlayerRegion = region;
+        drawnPlayerX = playerX;
+        drawnPlayerY = playerY;
+        drawnKeys = player.getKeys();
+        drawnCoins = player.getCoins();
+        drawnHealth = player.getHealth();
+        return true;
     }
 
-    private void renderTileLayer(Graphics2D g2d, TileLayer layer, int x1, int x2, int y1, int y2) {
+    /**
+     * Marks an area of the map as changed, so the next frame drawn by {@link #drawChanges} redraws
+     * it. If the camera has moved since the last frame, the whole frame is redrawn anyway.
+     * 
+     * @param x x-coordinate of the area in pixels
+     * @param y y-coordinate of the area in pixels
+     * @param w width of the area in pixels
+     * @param h height of the area in pixels
+     */
+    private void markDirty(int x, int y, int w, int h) {
+        dirtyRegion.add(x + drawnOffsetX, y + drawnOffsetY, w, h);
+    }
+
+    /**
+     * Marks the area a tile is drawn over as changed, which may be larger than its cell.
+     */
+    private void markTileDirty(Tile t, int col, int row) {
+        int w = (t == null) ? 0 : t.getRegion().getWidth();
+        int h = (t == null) ? 0 : t.getRegion().getHeight();
+        markDirty(tilesToPixels(col), tilesToPixels(row), Math.max(w, GamePanel.TILE_SIZE), 
+            Math.max(h, GamePanel.TILE_SIZE));
+    }
+
+    /**
+     * Marks the area an entity is drawn over as changed. Entities spawned from a tile draw it over
+     * at least their whole cell.
+     */
+    private void markEntityDirty(int slot) {
+        markEntityDirty(slot, entities.getX(slot), entities.getY(slot));
+    }
+
+    private void markEntityDirty(int slot, int x, int y) {
+        markDirty(x, y, Math.max(entities.getWidth(slot), GamePanel.TILE_SIZE), 
+            Math.max(entities.getHeight(slot), GamePanel.TILE_SIZE));
+    }
+
+    /**
+     * Marks the areas a moving entity was drawn over before its update and is drawn over now as
+     * changed.
+     */
+    private void entityUpdated(int slot, int oldX, int oldY) {
+        markEntityDirty(slot, oldX, oldY);
+        markEntityDirty(slot);
+    }
+
+    /**
+     * Draws the entities found by {@link EntityStore#findVisible}, from the specified position in
+     * drawing order up to the last entity of the specified layer.
+     * 
+     * @return position of the first entity not drawn
+     */
+    private int drawEntities(Graphics2D g2d, int next, int count, int layer, int offsetX, 
+        int offsetY) {
+        if (next == count) { return next; }
+        long start = FrameProfiler.start();
+        int[] order = entities.getDrawOrder();
+        for (; next < count && entities.getLayer(order[next]) <= layer; next++) {
+            int slot = order[next];
+            entities.getEntity(slot).draw(g2d, entities.getX(slot) + offsetX, 
+                entities.getY(slot) + offsetY);
+        }
+        FrameProfiler.stop(ENTITIES_PHASE, start);
+        return next;
+    }
+
+    private void renderTileLayer(Graphics2D g2d, TileLayer layer, int offsetX, int offsetY, 
+        Rectangle view) {
+        long start = FrameProfiler.start();
+        int firstCol = Math.max(0, pixelsToTiles(view.x - offsetX));
+        int lastCol = Math.min(mapSize.width - 1, pixelsToTiles(view.x + view.width - 1 - offsetX));
+        int firstRow = Math.max(0, pixelsToTiles(view.y - offsetY));
+        int lastRow = Math.min(mapSize.height - 1, pixelsToTiles(view.y + view.height - 1 - offsetY));
         Tile t;
-        for (int y = y1; y < y2; y++) {
-            for (int x = x1; x <= x2; x++) {
+        for (int y = firstRow; y <= lastRow; y++) {
+            for (int x = firstCol; x <= lastCol; x++) {
                 if ((t = layer.getTile(x, y)) == null) { continue; }
-                int xPos = x * GamePanel.TILE_SIZE + getTileMapOffsetX();
-                int yPos = y * GamePanel.TILE_SIZE + getTileMapOffsetY();
-                t.draw(g2d, xPos, yPos);
+                t.draw(g2d, tilesToPixels(x) + offsetX, tilesToPixels(y) + offsetY);
+            }
+        }
+        FrameProfiler.stop(layer.getProfilerPhase(), start);
+    }
+
+    /**
+     * Groups the visible layers into render passes. Neighbouring static layers share a chunk 
+     * cache, layers that spawned entities are drawn by their entities, and other layers are drawn
+     * tile by tile every frame.
+     */
+    private void buildRenderPasses() {
+        ArrayList<TileChunkCache> caches = new ArrayList<>();
+        ArrayList<TileLayer> passes = new ArrayList<>();
+        ArrayList<Integer> entityPasses = new ArrayList<>();
+        ArrayList<TileLayer> run = new ArrayList<>();
+        for (int i = 0; i < layers.length; i++) {
+            TileLayer layer = layers[i];
+            if (!layer.hasProperty(LayerProperty.VISIBLE)) { continue; }
+            boolean drawnByEntities = entityLayers != null && i < entityLayers.length && 
+                entityLayers[i];
+            if (layer.hasProperty(LayerProperty.STATIC) && !drawnByEntities) {
+                run.add(layer);
+                continue;
             }
+            if (!run.isEmpty()) {
+                caches.add(new TileChunkCache(run.toArray(new TileLayer[0])));
+                passes.add(null);
+                entityPasses.add(-1);
+                run.clear();
+            }
+            caches.add(null);
+            passes.add(drawnByEntities ? null : layer);
+            entityPasses.add(drawnByEntities ? i : -1);
+        }
+        if (!run.isEmpty()) {
+            caches.add(new TileChunkCache(run.toArray(new TileLayer[0])));
+            passes.add(null);
+            entityPasses.add(-1);
         }
+        passCaches = caches.toArray(new TileChunkCache[0]);
+        passLayers = passes.toArray(new TileLayer[0]);
+        passEntityLayers = entityPasses.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    private void clearRenderPasses() {
+        if (passCaches != null) {
+            for (TileChunkCache cache : passCaches) { if (cache != null) { cache.clear(); } }
+        }
+        passCaches = null;
+        passLayers = null;
+        passEntityLayers = null;
+        dirtyRegion.addAll();
     }
 
     public void update() {
+        player.savePreviousPosition();
         player.update();
-        if (player.getHealth() == 0) { panel.endGame(); }
+        if (player.getDamageCooldown() == 0 && isTouching(player, TileProperty.HAZARD)) {
+            player.takeDamage();
+        }
+        if (player.getHealth() == 0) { context.endGame(); }
 
-        for (Entity e : entities) {
-            if (e instanceof MovingEntity) { ((MovingEntity) e).update(); }
-            if (e instanceof Door) {
-                Door door = (Door) e;
-                
+        entities.updateMoving();
+
+        // Only the first entity the player touches has an effect
+        int slot = entities.findCollision(player.getX(), player.getY(), player.getWidth(), 
+            player.getHeight());
+        if (slot < 0) { return; }
+        Entity e = entities.getEntity(slot);
+        switch (entities.getKind(slot)) {
+            case EntityStore.DOOR:
                 // advance level if player collides with door
-                if (door.collidesWithPlayer()) {
-                    panel.endLevel();
-                    return;
-                }
-            }
-            if (e instanceof Key) {
-                Key key = (Key) e;
-
-                // collect key if player collides with key
-                if (key.collidesWithPlayer()) {
-                    key.collect();
-                    player.addKey();
-                    key.setVisible(false);
-                    return;
-                }
-            }
-            if (e instanceof Coin) {
-                Coin coin = (Coin) e;
-
-                // collect coin if player collides with coin
-                if (coin.collidesWithPlayer()) {
-                    coin.collect();
-                    player.addCoin();
-                    coin.setVisible(false);
-                    return;
-                }
-            }
-            if (e instanceof DangerObject) {
-                DangerObject dangerObject = (DangerObject) e;
-                if (dangerObject.collidesWithPlayer()) {
-                    if (player.getDamageCooldown() == 0) { player.takeDamage(); }
-                    return;
-                }
-            }
+                context.endLevel();
+                break;
+            case EntityStore.KEY:
+                ((Key) e).collect();
+                player.addKey();
+                ((Key) e).setVisible(false);
+                markEntityDirty(slot);
+                entities.remove(slot);
+                break;
+            case EntityStore.COIN:
+                ((Coin) e).collect();
+                player.addCoin();
+                ((Coin) e).setVisible(false);
+                markEntityDirty(slot);
+                entities.remove(slot);
+                break;
+            case EntityStore.DANGER:
+                if (player.getDamageCooldown() == 0) { player.takeDamage(); }
+                break;
         }
     }
 
     public void moveLeft() {
         player.move(Movement.LEFT);
-        Tile tile = collidesWithTileCoords(player.getX(), player.getY());
-        if (tile == null) { 
+        if (!isSolidAt(player.getX(), player.getY())) { 
             bgManager.moveLeft();
             return; 
         }
-        System.out.println ("[TILEMAP] Collision going left: " + tile);
-        player.setX((int) tile.getX() + player.getWidth());
+        System.out.println ("[TILEMAP] Collision going left at " + player.getX() + ", " + player.getY());
+        player.setX(tilesToPixels(pixelsToTiles(player.getX())) + player.getWidth());
     }
     
     public void moveRight() {
         player.move(Movement.RIGHT);
-        Tile tile = collidesWithTileCoords(player.getX() + player.getWidth(), player.getY());
-        if (tile == null) { 
+        int rightX = player.getX() + player.getWidth();
+        if (!isSolidAt(rightX, player.getY())) { 
             bgManager.moveRight();
             return; 
         }
-        System.out.println ("[TILEMAP] Collision going right: " + tile);
-        player.setX((int) tile.getX() - player.getWidth());
+        System.out.println ("[TILEMAP] Collision going right at " + rightX + ", " + player.getY());
+        player.setX(tilesToPixels(pixelsToTiles(rightX)) - player.getWidth());
         
     }
 
     public void jump() {
         player.move(Movement.JUMP);
-        Tile tile = collidesWithTileUp(player);
-        if (tile == null) { return; }
-        System.out.println ("[TILEMAP] Collision going up: " + tile);
-        player.setY(((int) tile.getY()) + GamePanel.TILE_SIZE + player.getHeight());
+        int headY = player.getY() - player.getHeight() / 2;
+        if (!isSolidAt(player.getX(), headY)) { return; }
+        System.out.println ("[TILEMAP] Collision going up at " + player.getX() + ", " + headY);
+        int tileY = tilesToPixels(pixelsToTiles(headY));
+        player.setY(tileY + GamePanel.TILE_SIZE + player.getHeight());
+    }
+
+    /**
+     * Applies a single player movement to the map, resolving any resulting tile collisions.
+     * 
+     * @param movement the movement to apply
+     */
+    public void handleMovement(Movement movement) {
+        switch (movement) {
+            case LEFT:   moveLeft();  break;
+            case RIGHT:  moveRight(); break;
+            case JUMP:   jump();      break;
+            case CROUCH: crouch();    break;
+            case STAND:  stand();     break;
+            default:                  break;
+        }
+    }
+
+    /**
+     * Applies every movement set in a per-tick movement mask, in {@link Movement} declaration 
+     * order.
+     * 
+     * @param movements mask of {@link Movement#bit()} values
+     */
+    public void handleMovements(int movements) {
+        if (movements == 0) { return; }
+        for (Movement movement : MOVEMENTS) {
+            if ((movements & movement.bit()) != 0) { handleMovement(movement); }
+        }
     }
 
     public void stand() {
@@ -0,0 +1,49 @@
+package Tile;
+
+/**
+ * TileProperty.java <hr>
+ * Boolean properties a tile can have. They are set with custom properties in Tiled, either on a
+ * tileset (or one of its tiles) in the TSX file or on a whole layer in the TMX file, e.g.
+ * {@code <property name="ladder" type="bool" value="true"/>}. The property names are matched
+ * ignoring case, spaces, dashes and underscores, so {@code "one-way"} sets {@link #ONE_WAY}.
+ * <p>
+ * The properties of every tile in a cell are combined into a single bitmask per cell by
+ * {@link TileMap}, so checking a property at a location takes constant time.
+ */
+public enum TileProperty {
+    /** Blocks movement */
+    SOLID,
+    /** Can be climbed */
+    LADDER,
+    /** Hurts the player on contact, once per damage cooldown */
+    HAZARD,
+    /** Can be stood on by landing on its top, but is passed through from below and the sides */
+    ONE_WAY;
+
+    private static final TileProperty[] PROPERTIES = values();
+
+    /**
+     * Gets the bit representing this property in a tile or cell bitmask.
+     * 
+     * @return bit mask with only this property's bit set
+     */
+    public int bit() { return PropertyFlags.bit(this); }
+
+    /**
+     * Checks if this property is set in the specified bitmask.
+     * 
+     * @param flags bitmask of properties
+     * @return      {@code true} if the property is set, {@code false} otherwise
+     */
+    public boolean isSet(int flags) { return PropertyFlags.isSet(this, flags); }
+
+    /**
+     * Gets the property with the specified Tiled property name.
+     * 
+     * @param name name of the custom property
+     * @return     the matching property, or null if the name is not a known property
+     */
+    public static TileProperty fromName(String name) {
+        return PropertyFlags.fromName(PROPERTIES, name);
+    }
+}
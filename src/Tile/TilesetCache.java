@@ -0,0 +1,188 @@
+package Tile;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.ConcurrentHashMap;
+
+import Game.GamePanel;
+import Managers.ImageManager;
+
+/**
+ * TilesetCache.java <hr>
+ * Keeps the tilesets read by every {@link TMXReader} for the rest of the process, so that
+ * replaying a level or moving to another level that uses the same tilesets does not parse their
+ * TSX files or decode their images again.
+ * <p>
+ * Tilesets are keyed by the canonical path of their TSX file, and tile images by the canonical
+ * path of the image file. Images are decoded and scaled to the tile size once per distinct file
+ * content (by SHA-256), so an image copied into several map folders is decoded only once. The
+ * scaled pixels are held once per distinct pixel content, so files that only differ in how they
+ * were encoded share them too, and tiles with the same image have the same pixel array. An entry
+ * is only used while the length and modification time of its files are unchanged; otherwise the
+ * file is read again.
+ * <p>
+ * Safe to use from any thread. Two threads missing the same entry at once may both read it, and
+ * one result is kept.
+ */
+public class TilesetCache {
+
+    private static final ConcurrentHashMap<String, Tileset> tilesets = new ConcurrentHashMap<>();
+    private static final ConcurrentHashMap<String, TileImage> images = new ConcurrentHashMap<>();
+    /** Scaled pixels of every image read, keyed by the SHA-256 of the image file */
+    private static final ConcurrentHashMap<String, int[]> pixelsByHash = new ConcurrentHashMap<>();
+    /** The same pixels, keyed by the SHA-256 of the pixels themselves */
+    private static final ConcurrentHashMap<String, int[]> pixelsByContent = new ConcurrentHashMap<>();
+
+    private TilesetCache() {}
+
+
+    /* Accessors */
+
+    public static int getTilesetCount() { return tilesets.size(); }
+
+    /**
+     * Gets the number of distinct images held, which may be fewer than the image files read.
+     */
+    public static int getImageCount() { return pixelsByContent.size(); }
+
+
+    /* Methods */
+
+    /**
+     * Gets the tileset read from a TSX file.
+     *
+     * @param tsxFile the TSX file
+     * @return        the tileset, or null if it has not been read or its files have changed
+     */
+    static Tileset getTileset(File tsxFile) throws IOException {
+        Tileset tileset = tilesets.get(tsxFile.getCanonicalPath());
+        if (tileset == null || !tileset.stamp.matches(tsxFile)) { return null; }
+        return tileset.image.stamp.matches(tileset.image.file) ? tileset : null;
+    }
+
+    /**
+     * Stores the tileset read from a TSX file.
+     *
+     * @param tsxFile the TSX file
+     * @param tileset the tileset read from it
+     */
+    static void putTileset(File tsxFile, Tileset tileset) throws IOException {
+        tilesets.put(tsxFile.getCanonicalPath(), tileset);
+    }
+
+    /**
+     * Gets a tile image, decoding and scaling it to the tile size unless an image with the same
+     * contents has been read before.
+     *
+     * @param file the image file
+     * @return     the image
+     */
+    static TileImage getImage(File file) throws IOException {
+        File canonical = file.getCanonicalFile();
+        TileImage image = images.get(canonical.getPath());
+        if (image != null && image.stamp.matches(canonical)) { return image; }
+
+        Stamp stamp = new Stamp(canonical);
+        String hash = getHash(Files.readAllBytes(canonical.toPath()));
+        int[] pixels = pixelsByHash.get(hash);
+        if (pixels == null) {
+            pixels = ImageManager.scalePixels(ImageManager.loadImage(canonical.getPath()),
+                GamePanel.TILE_SIZE, GamePanel.TILE_SIZE);
+            ByteBuffer bytes = ByteBuffer.allocate(pixels.length * Integer.BYTES);
+            bytes.asIntBuffer().put(pixels);
+            int[] same = pixelsByContent.putIfAbsent(getHash(bytes.array()), pixels);
+            if (same != null) { pixels = same; }
+            int[] existing = pixelsByHash.putIfAbsent(hash, pixels);
+            if (existing != null) { pixels = existing; }
+        }
+        image = new TileImage(canonical, stamp, pixels);
+        images.put(canonical.getPath(), image);
+        return image;
+    }
+
+    /**
+     * Drops every tileset and image, so they are read from their files again.
+     */
+    public static void clear() {
+        tilesets.clear();
+        images.clear();
+        pixelsByHash.clear();
+        pixelsByContent.clear();
+    }
+
+    private static String getHash(byte[] data) {
+        try {
+            StringBuilder hash = new StringBuilder();
+            for (byte b : MessageDigest.getInstance("SHA-256").digest(data)) {
+                hash.append(String.format("%02x", b));
+            }
+            return hash.toString();
+        } catch (NoSuchAlgorithmException e) { throw new IllegalStateException(e); }
+    }
+
+
+    /**
+     * The length and modification time of a file when it was read.
+     */
+    private static class Stamp {
+
+        final long length;
+        final long lastModified;
+
+        Stamp(File file) {
+            this.length = file.length();
+            this.lastModified = file.lastModified();
+        }
+
+        boolean matches(File file) { return file.length() == length && file.lastModified() == lastModified; }
+    }
+
+    /**
+     * A tile image file, with its pixels scaled to the tile size. The pixels are shared with every
+     * other file with the same contents and must not be changed.
+     */
+    static class TileImage {
+
+        final File file;
+        final int[] pixels;
+        private final Stamp stamp;
+
+        private TileImage(File file, Stamp stamp, int[] pixels) {
+            this.file = file;
+            this.stamp = stamp;
+            this.pixels = pixels;
+        }
+    }
+
+    /**
+     * The tile of a TSX file: the path of its image as written in the file, the name derived from
+     * it, its {@link TileProperty} flags and the image itself.
+     */
+    static class Tileset {
+
+        final String imagePath;
+        final String tileName;
+        final int flags;
+        final TileImage image;
+        private final Stamp stamp;
+
+        /**
+         * @param tsxFile   the TSX file, or null for a tileset embedded in a TMX file
+         * @param imagePath path of the image relative to the folder of the file
+         * @param tileName  name of the tile
+         * @param flags     {@link TileProperty} flags of the tile
+         * @param image     the image
+         */
+        Tileset(File tsxFile, String imagePath, String tileName, int flags, TileImage image) {
+            this.stamp = (tsxFile == null) ? null : new Stamp(tsxFile);
+            this.imagePath = imagePath;
+            this.tileName = tileName;
+            this.flags = flags;
+            this.image = image;
+        }
+    }
+}